@@ -0,0 +1,155 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.bench;
+
+import java.io.File;
+import java.io.FileReader;
+
+import javax.vecmath.Point2d;
+
+import org.openscience.cdk.Atom;
+import org.openscience.cdk.Bond;
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.io.MDLReader;
+
+/**
+ * The structures measured by the benchmarks: the bundled molfiles, read from the
+ * directory named by the <code>molfiles</code> system property, and synthetic
+ * structures generated with 2-D coordinates.
+ */
+final class BenchmarkStructures
+{
+  /**
+   * This class should not be instantiated.
+   */
+  private BenchmarkStructures()
+  {
+    
+  }
+
+  /**
+   * Returns the structure called <code>name</code>. Names beginning with
+   * <code>polyene-</code> or <code>acene-</code> followed by a size denote synthetic
+   * structures; any other name is the base name of a bundled molfile.
+   *
+   * @param name the structure name
+   * @return the structure
+   * @throws Exception if the molfile cannot be read
+   */
+  static IAtomContainer getStructure(String name) throws Exception
+  {
+    if (name.startsWith("polyene-"))
+    {
+      return createPolyene(Integer.parseInt(name.substring("polyene-".length())));
+    }
+
+    if (name.startsWith("acene-"))
+    {
+      return createAcene(Integer.parseInt(name.substring("acene-".length())));
+    }
+
+    File molfile = new File(System.getProperty("molfiles", "molfiles"), name + ".mol");
+    FileReader reader = new FileReader(molfile);
+
+    try
+    {
+      MDLReader mdlReader = new MDLReader(reader);
+
+      return (IAtomContainer) mdlReader.read(new Molecule());
+    }
+
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  /**
+   * Creates a zig-zag chain of <code>length</code> carbons with alternating single
+   * and double bonds, terminated by an oxygen and a nitrogen.
+   */
+  private static IAtomContainer createPolyene(int length)
+  {
+    Molecule result = new Molecule();
+    IAtom previous = null;
+
+    for (int i = 0; i < length; i++)
+    {
+      String symbol = i == 0 ? "O" : (i == length - 1 ? "N" : "C");
+      IAtom atom = new Atom(symbol, new Point2d(i * 0.866, (i % 2) * 0.5));
+
+      result.addAtom(atom);
+
+      if (previous != null)
+      {
+        IBond.Order order = i % 2 == 0 ? IBond.Order.DOUBLE : IBond.Order.SINGLE;
+
+        result.addBond(new Bond(previous, atom, order));
+      }
+
+      previous = atom;
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates a linear chain of <code>rings</code> fused hexagons with Kekule double
+   * bonds, exercising ring perception and double bond placement.
+   */
+  private static IAtomContainer createAcene(int rings)
+  {
+    Molecule result = new Molecule();
+    int columns = rings + 1;
+    IAtom[] top = new IAtom[columns];
+    IAtom[] bottom = new IAtom[columns];
+    IAtom[] upper = new IAtom[rings];
+    IAtom[] lower = new IAtom[rings];
+
+    for (int i = 0; i < columns; i++)
+    {
+      top[i] = new Atom("C", new Point2d(i * 1.732, 0.5));
+      bottom[i] = new Atom("C", new Point2d(i * 1.732, -0.5));
+      result.addAtom(top[i]);
+      result.addAtom(bottom[i]);
+      result.addBond(new Bond(top[i], bottom[i], IBond.Order.SINGLE));
+    }
+
+    for (int i = 0; i < rings; i++)
+    {
+      upper[i] = new Atom(i % 3 == 0 ? "N" : "C", new Point2d(i * 1.732 + 0.866, 1.0));
+      lower[i] = new Atom("C", new Point2d(i * 1.732 + 0.866, -1.0));
+      result.addAtom(upper[i]);
+      result.addAtom(lower[i]);
+      result.addBond(new Bond(top[i], upper[i], IBond.Order.DOUBLE));
+      result.addBond(new Bond(upper[i], top[i + 1], IBond.Order.SINGLE));
+      result.addBond(new Bond(bottom[i], lower[i], IBond.Order.SINGLE));
+      result.addBond(new Bond(lower[i], bottom[i + 1], IBond.Order.DOUBLE));
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,297 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.bench;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+import net.sf.structure.cdk.util.GeometryKit;
+
+/**
+ * Compares the bond geometry of <code>GeometryKit</code> with the trigonometric,
+ * <code>Point2D</code>-allocating implementation it replaced. Each invocation places
+ * a double bond on every bond of the structure: it trims the bond to a label box
+ * around its source atom, decides on which side a neighbor lies, and translates and
+ * shortens the second line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark
+{
+  @Param({ "caffeine", "indole", "serotonin", "mdma", "tetralin", "dihydronaphthalene",
+    "1methylnaphthalene", "phenobarbitol", "diazinon", "clopidogrel", "tamiflu", "catalyst",
+    "beta_carotene", "vitamin_d2" })
+  public String structureName;
+
+  private double[] bonds;
+  private double[] neighbors;
+  private Rectangle2D[] labels;
+  private double[] lines;
+  private Line2D line1;
+  private Line2D line2;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception
+  {
+    IAtomContainer structure = BenchmarkStructures.getStructure(structureName);
+    int bondCount = structure.getBondCount();
+
+    bonds = new double[4 * bondCount];
+    neighbors = new double[2 * bondCount];
+    labels = new Rectangle2D[bondCount];
+    lines = new double[8];
+    line1 = new Line2D.Double();
+    line2 = new Line2D.Double();
+
+    for (int i = 0; i < bondCount; i++)
+    {
+      IBond bond = structure.getBond(i);
+      IAtom source = bond.getAtom(0);
+      IAtom target = bond.getAtom(1);
+      IAtom neighbor = structure.getAtom((structure.getAtomNumber(target) + 1) % structure.getAtomCount());
+
+      bonds[4 * i] = source.getPoint2d().x;
+      bonds[4 * i + 1] = -source.getPoint2d().y;
+      bonds[4 * i + 2] = target.getPoint2d().x;
+      bonds[4 * i + 3] = -target.getPoint2d().y;
+      neighbors[2 * i] = neighbor.getPoint2d().x;
+      neighbors[2 * i + 1] = -neighbor.getPoint2d().y;
+      labels[i] = new Rectangle2D.Double(bonds[4 * i] - 0.2, bonds[4 * i + 1] - 0.25, 0.4, 0.5);
+    }
+  }
+
+  /**
+   * Places the bonds with the primitive <code>double[]</code> methods.
+   */
+  @Benchmark
+  public double primitive()
+  {
+    double result = 0;
+
+    for (int i = 0; i < labels.length; i++)
+    {
+      System.arraycopy(bonds, 4 * i, lines, 0, 4);
+      GeometryKit.trimLine(lines, 0, labels[i]);
+      System.arraycopy(lines, 0, lines, 4, 4);
+
+      double translation = GeometryKit.pointAbove(lines, 0, neighbors[2 * i], neighbors[2 * i + 1]) ? 0.1 : -0.1;
+
+      GeometryKit.translate(lines, 4, translation);
+      GeometryKit.shortenToCenter(lines, 4, 0.25);
+      result += lines[0] + lines[4];
+    }
+
+    return result;
+  }
+
+  /**
+   * Places the bonds with the <code>Line2D</code> methods.
+   */
+  @Benchmark
+  public double line()
+  {
+    double result = 0;
+
+    for (int i = 0; i < labels.length; i++)
+    {
+      line1.setLine(bonds[4 * i], bonds[4 * i + 1], bonds[4 * i + 2], bonds[4 * i + 3]);
+      GeometryKit.trimLine(line1, labels[i]);
+      line2.setLine(line1);
+
+      double translation = GeometryKit.pointAbove(line1, neighbors[2 * i], neighbors[2 * i + 1]) ? 0.1 : -0.1;
+
+      GeometryKit.translate(line2, translation);
+      GeometryKit.shortenToCenter(line2, 0.25);
+      result += line1.getX1() + line2.getX1();
+    }
+
+    return result;
+  }
+
+  /**
+   * Places the bonds with the former trigonometric implementation.
+   */
+  @Benchmark
+  public double trigonometric()
+  {
+    double result = 0;
+
+    for (int i = 0; i < labels.length; i++)
+    {
+      Line2D first = new Line2D.Double(bonds[4 * i], bonds[4 * i + 1], bonds[4 * i + 2], bonds[4 * i + 3]);
+
+      TrigonometricGeometry.trimLine(first, labels[i]);
+
+      Line2D second = new Line2D.Double(first.getP1(), first.getP2());
+      double translation = TrigonometricGeometry.pointAbove(first, neighbors[2 * i], neighbors[2 * i + 1]) ? 0.1 : -0.1;
+
+      TrigonometricGeometry.translate(second, translation);
+      GeometryKit.shortenToCenter(second, 0.25);
+      result += first.getX1() + second.getX1();
+    }
+
+    return result;
+  }
+
+  /**
+   * The bond geometry of <code>GeometryKit</code> before it moved to vector arithmetic,
+   * kept as a baseline.
+   */
+  private static final class TrigonometricGeometry
+  {
+    private static double getDistance(double x1, double y1, double x2, double y2)
+    {
+      return Math.sqrt(Math.pow(x1 - x2, 2) + Math.pow(y1 - y2, 2));
+    }
+
+    private static void translate(Line2D line, double distance)
+    {
+      double length = getDistance(line.getX1(), line.getY1(), line.getX2(), line.getY2());
+      double x = line.getX2() - line.getX1();
+      double y = line.getY2() - line.getY1();
+      double dx = (distance * y) / length;
+      double dy = -(distance * x) / length;
+
+      line.setLine(line.getX1() + dx, line.getY1() + dy, line.getX2() + dx, line.getY2() + dy);
+    }
+
+    private static boolean pointAbove(Line2D line, double x, double y)
+    {
+      double angle =
+        getAngle(line.getX1(), line.getY1(), x, y) -
+        getAngle(line.getX1(), line.getY1(), line.getX2(), line.getY2());
+
+      return getDistance(line.getX1(), line.getY1(), x, y) * Math.sin(angle) < 0;
+    }
+
+    private static void trimLine(Line2D line, Rectangle2D bounds)
+    {
+      Point2D source = null;
+      Point2D target = null;
+      boolean reverse = false;
+
+      if (bounds.contains(line.getP1()) && bounds.contains(line.getP2()))
+      {
+        return;
+      }
+
+      if (bounds.contains(line.getP1()))
+      {
+        source = line.getP1();
+        target = line.getP2();
+      }
+
+      else if (bounds.contains(line.getP2()))
+      {
+        source = line.getP2();
+        target = line.getP1();
+        reverse = true;
+      }
+
+      else
+      {
+        return;
+      }
+
+      double x1 = source.getX();
+      double y1 = source.getY();
+      double x2 = target.getX();
+      double y2 = target.getY();
+      double dx = x2 - x1;
+      double dy = y1 - y2;
+      double angle = getAngle(x1, y1, x2, y2);
+      double left = bounds.getX();
+      double right = left + bounds.getWidth();
+      double top = bounds.getY();
+      double bottom = top + bounds.getHeight();
+      double angleBound1 = getAngle(x1, y1, right, top);
+      double angleBound2 = getAngle(x1, y1, right, bottom);
+      double angleBound3 = getAngle(x1, y1, left, bottom);
+      double angleBound4 = getAngle(x1, y1, left, top);
+      double x = 0.0;
+      double y = 0.0;
+
+      if ((angle >= angleBound1) || (angle <= angleBound2))
+      {
+        x = right;
+        y = y1 - (x - x1) * (dy / dx);
+      }
+
+      else if ((angle > angleBound2) && (angle < angleBound3))
+      {
+        y = bottom;
+        x = x1 + (y1 - y) * (dx / dy);
+      }
+
+      else if ((angle >= angleBound3) && (angle <= angleBound4))
+      {
+        x = left;
+        y = y1 - (x - x1) * (dy / dx);
+      }
+
+      else
+      {
+        y = top;
+        x = x1 + (y1 - y) * (dx / dy);
+      }
+
+      if (reverse)
+      {
+        line.setLine(x2, y2, x, y);
+      }
+
+      else
+      {
+        line.setLine(x, y, x2, y2);
+      }
+    }
+
+    private static double getAngle(double x1, double y1, double x2, double y2)
+    {
+      return GeometryKit.getAngle(x1, y1, x2, y2);
+    }
+  }
+}
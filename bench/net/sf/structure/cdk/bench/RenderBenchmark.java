@@ -0,0 +1,187 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+import net.sf.structure.cdk.paint.DefaultGraphicsPainter;
+import net.sf.structure.cdk.paint.RenderPlan;
+import net.sf.structure.cdk.util.ImageKit;
+
+/**
+ * Measures each stage of rendering separately: layout, painting onto a
+ * <code>BufferedImage</code>, and encoding to PNG and SVG through <code>ImageKit</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark
+{
+  @Param({ "caffeine", "indole", "serotonin", "mdma", "tetralin", "dihydronaphthalene",
+    "1methylnaphthalene", "phenobarbitol", "diazinon", "clopidogrel", "tamiflu", "catalyst",
+    "beta_carotene", "vitamin_d2", "polyene-500", "acene-100" })
+  public String structureName;
+
+  @Param({ "300" })
+  public int size;
+
+  private IAtomContainer structure;
+  private BufferedImage image;
+  private Rectangle bounds;
+  private File output;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception
+  {
+    structure = BenchmarkStructures.getStructure(structureName);
+    image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+    bounds = new Rectangle(size, size);
+    output = File.createTempFile("bench", null);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    output.delete();
+  }
+
+  /**
+   * Lays out the structure, including ring perception and double bond placement.
+   */
+  @Benchmark
+  public RenderPlan layout(Layout layout)
+  {
+    layout.painter.setAtomContainer(layout.structure);
+
+    return layout.painter.getRenderPlan();
+  }
+
+  /**
+   * Paints a precomputed layout onto a reused image.
+   */
+  @Benchmark
+  public BufferedImage paint(Painting painting)
+  {
+    Graphics2D g = image.createGraphics();
+
+    try
+    {
+      g.setColor(Color.WHITE);
+      g.fill(bounds);
+      painting.plan.paint(g, bounds);
+    }
+
+    finally
+    {
+      g.dispose();
+    }
+
+    return image;
+  }
+
+  /**
+   * Lays out, paints and encodes the structure as PNG.
+   */
+  @Benchmark
+  public void writePNG() throws IOException
+  {
+    ImageKit.writePNG(structure, size, size, output.getPath());
+  }
+
+  /**
+   * Lays out, paints and encodes the structure as SVG.
+   */
+  @Benchmark
+  public void writeSVG() throws IOException
+  {
+    ImageKit.writeSVG(structure, size, size, output.getPath());
+  }
+
+  /**
+   * A newly read copy of the structure and a new painter for each invocation of
+   * {@link RenderBenchmark#layout(Layout)}, so that no layout starts with the ring
+   * index or aromaticity perceived by the one before.
+   */
+  @State(Scope.Thread)
+  public static class Layout
+  {
+    private IAtomContainer structure;
+    private DefaultGraphicsPainter painter;
+
+    @Setup(Level.Invocation)
+    public void setUp(RenderBenchmark benchmark) throws Exception
+    {
+      structure = BenchmarkStructures.getStructure(benchmark.structureName);
+      painter = new DefaultGraphicsPainter();
+    }
+  }
+
+  /**
+   * The precomputed layout painted by {@link RenderBenchmark#paint(Painting)}, with
+   * and without batch stroking. Kept apart so that the other benchmarks, which do
+   * not stroke through a painter, are not run once per setting.
+   */
+  @State(Scope.Thread)
+  public static class Painting
+  {
+    @Param({ "false", "true" })
+    public boolean batchStroking;
+
+    private RenderPlan plan;
+
+    @Setup(Level.Trial)
+    public void setUp(RenderBenchmark benchmark)
+    {
+      DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+
+      painter.setBatchStroking(batchStroking);
+      painter.setAtomContainer(benchmark.structure);
+      plan = painter.getRenderPlan();
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileReader;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.interfaces.IMolecule;
+import org.openscience.cdk.io.MDLReader;
+
+import net.sf.structure.cdk.util.ImageKit;
+
+/**
+ * <p>
+ * Compares renders of the bundled molfiles with the reference renders in the
+ * <code>renders</code> directory, made by the layout and painting code as it was
+ * before bond geometry moved to index-based snapshots and flat segment arrays.
+ * </p>
+ *
+ * <p>
+ * The references were made with no atom perceived as aromatic, so the structures are
+ * marked {@link DefaultGraphicsPainter#AROMATICITY_PERCEIVED} with their flags as read;
+ * the comparison then does not depend on the aromaticity model of the CDK release in
+ * use. Atom labels are left out of the comparison, since their pixels depend on the
+ * fonts of the platform. Kept in the package of <code>RenderPlan</code>, whose label
+ * geometry is not public.
+ * </p>
+ */
+public class BaselineRenderTest extends TestCase
+{
+  private static final int SIZE = 300;
+  private static final int MAXIMUM_DIFFERENCE = 2;
+  private static final double LABEL_MARGIN = 2;
+
+  public void testRendersMatchBaseline() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      String name = molfiles[i].getName();
+      File reference = new File(System.getProperty("renders", "renders"),
+        name.substring(0, name.lastIndexOf('.')) + ".png");
+
+      assertTrue("reference render not found: " + reference.getAbsolutePath(), reference.isFile());
+
+      IMolecule molecule = readMolecule(molfiles[i]);
+
+      molecule.setProperty(DefaultGraphicsPainter.AROMATICITY_PERCEIVED, Boolean.TRUE);
+
+      RenderPlan plan = new DefaultGraphicsPainter().createRenderPlan(molecule);
+      BufferedImage expected = ImageIO.read(reference);
+      BufferedImage actual = (BufferedImage) ImageKit.createRenderedImage(plan, SIZE, SIZE);
+      Area labels = createLabelArea(plan);
+
+      assertEquals(name, expected.getWidth(), actual.getWidth());
+      assertEquals(name, expected.getHeight(), actual.getHeight());
+
+      for (int y = 0; y < SIZE; y++)
+      {
+        for (int x = 0; x < SIZE; x++)
+        {
+          if (labels.intersects(x, y, 1, 1))
+          {
+            continue;
+          }
+
+          int a = expected.getRGB(x, y);
+          int b = actual.getRGB(x, y);
+
+          for (int shift = 0; shift < 24; shift += 8)
+          {
+            assertTrue(name + ": pixel (" + x + ", " + y + ") differs",
+              Math.abs((a >> shift & 0xff) - (b >> shift & 0xff)) <= MAXIMUM_DIFFERENCE);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the pixels covered by the atom labels of <code>plan</code>, rendered at
+   * <code>SIZE</code> by <code>SIZE</code> pixels, widened by a small margin.
+   */
+  private Area createLabelArea(RenderPlan plan)
+  {
+    AffineTransform transform = plan.createTransform(new Rectangle(SIZE, SIZE));
+    Area result = new Area();
+
+    for (int i = 0; i < plan.getLabelCount(); i++)
+    {
+      AffineTransform label = new AffineTransform(transform);
+
+      label.concatenate(plan.getLabelTransform(i));
+
+      Rectangle2D bounds = label.createTransformedShape(plan.getLabelOutline(i).getBounds2D()).getBounds2D();
+
+      result.add(new Area(new Rectangle2D.Double(bounds.getX() - LABEL_MARGIN, bounds.getY() - LABEL_MARGIN,
+        bounds.getWidth() + 2 * LABEL_MARGIN, bounds.getHeight() + 2 * LABEL_MARGIN)));
+    }
+
+    return result;
+  }
+
+  private File[] getMolfiles()
+  {
+    File dir = new File(System.getProperty("molfiles", "molfiles"));
+    File[] result = dir.listFiles();
+
+    assertNotNull("molfile directory not found: " + dir.getAbsolutePath(), result);
+
+    return result;
+  }
+
+  private IMolecule readMolecule(File molfile) throws Exception
+  {
+    FileReader reader = new FileReader(molfile);
+
+    try
+    {
+      return (IMolecule) new MDLReader(reader).read(new Molecule());
+    }
+
+    finally
+    {
+      reader.close();
+    }
+  }
+}
@@ -79,4 +79,24 @@ public class DefaultColorScheme implements ColorScheme
     
     return Color.BLACK;
   }
+
+  /**
+   * Returns <code>true</code> if <code>obj</code> is also a <code>DefaultColorScheme</code>.
+   * All instances assign the same colors.
+   * 
+   * @param obj the object to compare with
+   * @return <code>true</code> if <code>obj</code> is a <code>DefaultColorScheme</code>
+   */
+  public boolean equals(Object obj)
+  {
+    return obj != null && obj.getClass() == getClass();
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#hashCode()
+   */
+  public int hashCode()
+  {
+    return getClass().hashCode();
+  }
 }
@@ -22,55 +22,71 @@
  */
 package net.sf.structure.cdk.paint;
 
-import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
-import java.util.HashSet;
-
-import java.awt.BasicStroke;
-import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
-import java.awt.Shape;
-import java.awt.Stroke;
-import java.awt.Font;
-import java.awt.font.GlyphVector;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.GeneralPath;
-import java.awt.geom.Line2D;
+import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
-import java.awt.geom.AffineTransform;
 
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.interfaces.IAtom;
-import org.openscience.cdk.interfaces.IBond;
-import org.openscience.cdk.interfaces.IRingSet;
-import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.aromaticity.CDKHueckelAromaticityDetector;
-import org.openscience.cdk.CDKConstants;
-import org.openscience.cdk.ringsearch.SSSRFinder;
-
-import net.sf.structure.cdk.util.GeometryKit;
+import org.openscience.cdk.interfaces.IChemObjectChangeEvent;
+import org.openscience.cdk.interfaces.IChemObjectListener;
 
 /**
+ * <p>
  * A default implementation of the <code>GraphicsPainter</code> interface.
+ * </p>
+ * 
+ * <p>
+ * Layout is kept separate from painting: setting a structure or importing settings
+ * produces an immutable {@link RenderPlan}, which <code>paint</code> then draws.
+ * Plans for other structures can be created with {@link #createRenderPlan(IAtomContainer)}
+ * without disturbing the structure held by this painter.
+ * </p>
+ * 
+ * <p>
+ * If the <code>Graphics2D</code> context has a clip, <code>paint</code> draws only the
+ * bonds and atom labels that reach into it, so repainting part of a large structure,
+ * or the visible part of a zoomed-in view, costs little more than the part drawn.
+ * </p>
+ * 
+ * <p>
+ * With incremental layout, the painter listens to its structure and updates its plan
+ * whenever an atom, a bond or the structure reports a change, laying out again only
+ * what the change affects. See {@link #setIncrementalLayout(boolean)}.
+ * </p>
+ * 
+ * <p>
+ * Placing some ring double bonds requires aromaticity, which this painter perceives
+ * at most once per structure and bond order assignment. A caller that has already perceived it can
+ * set the {@link #AROMATICITY_PERCEIVED} property of the structure to
+ * <code>Boolean.TRUE</code>, and the existing aromaticity flags of its atoms are used.
+ * Otherwise aromaticity is perceived on a copy, and the flags of the structure are
+ * left unchanged.
+ * </p>
+ * 
  * @author Richard Apodaca
  */
 public class DefaultGraphicsPainter implements GraphicsPainter
 {
+  /**
+   * The structure property that, when <code>Boolean.TRUE</code>, marks the aromaticity
+   * flags of the atoms of a structure as already perceived.
+   */
+  public static final String AROMATICITY_PERCEIVED = "net.sf.structure.cdk.aromaticityPerceived";
+  
   private IAtomContainer structure;
   private ColorScheme colorScheme;
-  private Hashtable<IAtom, Shape> atomToShape;
-  private Hashtable<IBond, Shape> atomPairToShape;
-  private Rectangle2D perimeter;
-  private double atomPairLength;
   private double atomHeight;
   private double lineSpacing;
   private double lineThickness;
   private boolean antialiasing;
-  private IRingSet sssr;
-  private boolean aromaticityDetected;
+  private boolean batchStroking;
+  private boolean levelOfDetail;
+  private boolean incrementalLayout;
+  private RenderPlan plan;
+  private RenderPlanBuilder builder;
+  private RingIndex ringIndex;
+  private IChemObjectListener listener;
+  private boolean updating;
   
   /**
    * Default constructor.
@@ -85,12 +101,14 @@ public class DefaultGraphicsPainter implements GraphicsPainter
     lineSpacing = 0.20;
     lineThickness = 0.07;//0.1;
     antialiasing = true;
-    atomToShape = new Hashtable<IAtom, Shape>();
-    atomPairToShape = new Hashtable<IBond, Shape>();  
-    perimeter = null;
-    atomPairLength = 0;
-    sssr = null;
-    aromaticityDetected = false;
+    batchStroking = false;
+    levelOfDetail = true;
+    incrementalLayout = false;
+    plan = null;
+    builder = null;
+    ringIndex = null;
+    listener = new StructureListener();
+    updating = false;
   }
 
   /* (non-Javadoc)
@@ -106,764 +124,318 @@ public class DefaultGraphicsPainter implements GraphicsPainter
    */
   public void setAtomContainer(IAtomContainer ac)
   {
-    this.structure = ac;
-    this.sssr = null;
-    this.aromaticityDetected = false;
+    listen(false);
     
-    layout();
-  }
-
-  /* (non-Javadoc)
-   * @see net.sf.structure.paint.GraphicsPainter#paint(java.awt.Graphics2D, java.awt.geom.Rectangle2D)
-   */
-  public void paint(Graphics2D g, Rectangle2D bounds)
-  {
-    if (structure == null)
+    if (ac != structure)
     {
-      return;
+      this.ringIndex = null;
     }
-
-    prepaint(g, bounds);
-    paintAtomPairs(g);
-    paintAtoms(g);
-    postpaint(g, bounds);
-  }
-
-  /* (non-Javadoc)
-   * @see net.sf.structure.paint.GraphicsPainter#importSettings(net.sf.structure.paint.GraphicsPainter.SettingsImporter)
-   */
-  public void importSettings(SettingsImporter importer)
-  {
-    this.antialiasing = importer.getAntialiasing();
-    this.atomHeight = importer.getAtomLabelHeight();
-    this.colorScheme = importer.getColorScheme();
-    this.lineSpacing = importer.getLineSpacing();
-    this.lineThickness = importer.getLineThickness();
     
+    this.structure = ac;
+    
+    listen(true);
     layout();
   }
-
-  /* (non-Javadoc)
-   * @see net.sf.structure.paint.GraphicsPainter#exportSettings(net.sf.structure.paint.GraphicsPainter.SettingsExporter)
+  
+  /**
+   * Sets <code>ac</code> as the structure of this painter together with
+   * <code>plan</code>, built from it by <code>builder</code>, instead of laying it out
+   * again. The builder must have been created by {@link #createBuilder(IAtomContainer)}
+   * with the current settings of this painter.
    */
-  public void exportSettings(SettingsExporter exporter)
+  void setAtomContainer(IAtomContainer ac, RenderPlanBuilder builder, RenderPlan plan)
   {
-    exporter.setAntialiasing(antialiasing);
-    exporter.setAtomLabelHeight(atomHeight);
-    exporter.setColorScheme(colorScheme);
-    exporter.setLineSpacing(lineSpacing);
-    exporter.setLineThickness(lineThickness);
+    listen(false);
+    
+    this.structure = ac;
+    this.builder = incrementalLayout ? builder : null;
+    this.ringIndex = builder.getComputedRingIndex();
+    this.plan = plan;
+    
+    listen(true);
   }
   
-  private double getX(IAtom atom)
+  /**
+   * Returns the <code>RenderPlan</code> for the current structure and settings.
+   * 
+   * @return the current <code>RenderPlan</code>, or <code>null</code> if no structure
+   * has been set
+   */
+  public RenderPlan getRenderPlan()
   {
-    return atom.getPoint2d().x;
+    return plan;
   }
   
-  private double getY(IAtom atom)
+  /**
+   * Returns <code>true</code> if plans created by this painter stroke all bonds as a
+   * single path.
+   * 
+   * @return <code>true</code> if bonds are stroked as a single path
+   */
+  public boolean isBatchStroking()
   {
-    // match molfile y-coordinate with Graphics y-coordinate
-    return -atom.getPoint2d().y;
+    return batchStroking;
   }
   
-  private void layout()
+  /**
+   * Activates or deactivates stroking all bonds as a single path. A single path is
+   * stroked with one call into the <code>Graphics2D</code> pipeline rather than one
+   * per line, which is considerably faster for large structures. With antialiasing,
+   * bond junctions come out slightly lighter, because overlapping lines are no
+   * longer composited twice. Deactivated by default.
+   * 
+   * @param batchStroking use <code>true</code> to stroke bonds as a single path
+   */
+  public void setBatchStroking(boolean batchStroking)
   {
-    atomToShape.clear();
-    atomPairToShape.clear();
-    this.atomPairLength = getAverageAtomDistance(structure);
-    
-    createAtomShapes();
-    createAtomPairShapes();
+    this.batchStroking = batchStroking;
     
-    this.perimeter = createPerimeter();
+    layout();
   }
   
-  private void createAtomShapes()
+  /**
+   * Returns <code>true</code> if plans created by this painter adapt their detail to
+   * the size at which they are painted.
+   * 
+   * @return <code>true</code> if level of detail is active
+   */
+  public boolean isLevelOfDetail()
   {
-    for (int i = 0; i < structure.getAtomCount(); i++)
-    {
-      IAtom atom = structure.getAtom(i);
-      
-      if (!"C".equals(atom.getSymbol()))
-      {  
-        atomToShape.put(atom, createShape(atom));
-      }
-    }
+    return levelOfDetail;
   }
   
-  private Shape createShape(IAtom atom)
+  /**
+   * Activates or deactivates level of detail. While active, plans drop detail that
+   * would be too small to make out where a bond is only a few pixels long, as in
+   * thumbnails: multiple bonds are drawn as a single line, thin lines as hairlines,
+   * and small atom labels as dots of their color, or not at all. At ordinary sizes
+   * nothing changes. Activated by default.
+   * 
+   * @param levelOfDetail use <code>true</code> to adapt detail to the painted size
+   */
+  public void setLevelOfDetail(boolean levelOfDetail)
   {
-    double radius = atomPairLength * atomHeight;
-    double x = getX(atom) - 0.5 * radius;
-    double y = getY(atom) - 0.5 * radius;
-    Ellipse2D circle = new Ellipse2D.Double(x, y, radius, radius);
+    this.levelOfDetail = levelOfDetail;
     
-    return circle;      
-  }
-  
-  private void createAtomPairShapes()
-  {
-    for (int i = 0; i < structure.getBondCount(); i++)
-    {
-      IBond pair = structure.getBond(i);
-      
-      IBond.Order order = pair.getOrder();
-      
-      if (order == IBond.Order.valueOf("SINGLE"))
-      {
-        atomPairToShape.put(pair, createSingleBondShape(pair));
-      }
-      
-      else if (order == IBond.Order.valueOf("DOUBLE"))
-      {
-        atomPairToShape.put(pair, createDoubleBondShape(pair));
-      }
-      
-      else if (order == IBond.Order.valueOf("TRIPLE"))
-      {
-        atomPairToShape.put(pair, createTripleBondShape(pair));
-      }
-      
-      else if (order == IBond.Order.valueOf("QUADRUPLE"))
-      {
-        atomPairToShape.put(pair, createQuadrupleBondShape(pair));
-      }
-    }
+    layout();
   }
   
-  private Shape createSingleBondShape(IBond pair)
+  /**
+   * Returns <code>true</code> if this painter follows changes to its structure.
+   * 
+   * @return <code>true</code> if incremental layout is active
+   */
+  public boolean isIncrementalLayout()
   {
-    return createLine(pair);
+    return incrementalLayout;
   }
   
-  private Shape createDoubleBondShape(IBond pair)
+  /**
+   * Activates or deactivates incremental layout. While active, the painter is a
+   * listener of its structure and updates its plan on every change event, laying out
+   * again only the changed atoms and bonds and the bonds around them, so the cost of
+   * an edit does not grow with the size of the structure. Removing atoms or bonds,
+   * closing a ring or letting the average bond length drift by more than one percent
+   * causes a full layout. Changes are applied on the thread that makes them.
+   * Deactivated by default, since the structure then holds a reference to the painter.
+   * 
+   * @param incrementalLayout use <code>true</code> to follow changes to the structure
+   */
+  public void setIncrementalLayout(boolean incrementalLayout)
   {
-    Shape shape = null;
-    
-    int source = structure.getConnectedBondsCount(pair.getAtom(0)) - 1;
-    int target = structure.getConnectedBondsCount(pair.getAtom(1)) - 1;
+    listen(false);
     
-    if ((source == 1 && target == 0) || (source == 0 && target == 1))
-    {
-      shape = createTerminalDoubleBondShape(pair);
-    }
-    
-    else if (source == 0 ||  target == 0)
-    {
-      shape = create11DisubstitutedDoubleBondShape(pair);
-    }
-    
-    else if (source == 1 && target == 1)
-    {
-      shape = create12DisubstitutedDoubleBondShape(pair);
-    }
-    
-    else if ((source == 2 && target == 1) || (source == 1 && target == 2))
-    {
-      shape = createTriSubstitutedDoubleBondShape(pair);
-    }
-    
-    else if (source == 2 && target == 2)
-    {
-      shape = createTetrasubstitutedBondShape(pair);
-    }
-    
-    else
-    {
-      shape = createTerminalDoubleBondShape(pair);
-    }
+    this.incrementalLayout = incrementalLayout;
     
-    return shape;
-  }
-  
-  private Shape createTerminalDoubleBondShape(IBond pair)
-  {
-    Line2D line1 = createLine(pair);
-    Line2D line2 = createLine(pair);
-    double translation = 0.5 * atomPairLength * lineSpacing;
-
-    GeometryKit.translate(line2, -2 * translation);
-    GeometryKit.shortenToCenter(line2, 0.25);
-
-    GeneralPath path = new GeneralPath();
-
-    path.append(line1, false);
-    path.append(line2, false);
-
-    return path;
+    listen(true);
+    layout();
   }
   
-  private IAtom getSourceSubstituent(IBond pair)
+  /**
+   * Lays out <code>ac</code> with the current settings of this painter and returns
+   * the resulting <code>RenderPlan</code>. Neither the structure nor the plan held by
+   * this painter are changed.
+   * 
+   * @param ac the structure to lay out
+   * @return a new <code>RenderPlan</code> for <code>ac</code>
+   */
+  public RenderPlan createRenderPlan(IAtomContainer ac)
   {
-    IAtom source = pair.getAtom(0);
-    
-    List<IAtom> neighbors = structure.getConnectedAtomsList(source);
-    
-    for (int i = 0; i < neighbors.size(); i++)
-    {
-      if (neighbors.get(i) != pair.getAtom(1))
-      {
-        return neighbors.get(i);
-      }
-    }
-    
-    return null;
+    return createBuilder(ac).build();
   }
   
-  private IAtom getTargetSubstituent(IBond pair)
+  /**
+   * Returns a new builder that lays out <code>ac</code> with the current settings of
+   * this painter, on whichever thread calls its <code>build</code> method. A builder
+   * of the current structure reuses the ring index of the last layout.
+   */
+  RenderPlanBuilder createBuilder(IAtomContainer ac)
   {
-    IAtom target = pair.getAtom(1);
-    
-    List<IAtom> neighbors = structure.getConnectedAtomsList(target);
+    RenderPlanBuilder result = new RenderPlanBuilder(ac, colorScheme, atomHeight, lineSpacing,
+      lineThickness, antialiasing, batchStroking, levelOfDetail);
     
-    for (int i = 0; i < neighbors.size(); i++)
+    if (ac == structure)
     {
-      if (neighbors.get(i) != pair.getAtom(0))
-      {
-        return neighbors.get(i);
-      }
+      result.setRingIndex(ringIndex);
     }
     
-    return null;
+    return result;
   }
 
-  
-  private Shape create12DisubstitutedDoubleBondShape(IBond pair)
+  /* (non-Javadoc)
+   * @see net.sf.structure.paint.GraphicsPainter#paint(java.awt.Graphics2D, java.awt.geom.Rectangle2D)
+   */
+  public void paint(Graphics2D g, Rectangle2D bounds)
   {
-    Line2D line1 = createLine(pair);
-    Line2D line2 = createLine(pair);
-    double translation = 0.5 * atomPairLength * lineSpacing;
-    double sourceX = getX(getSourceSubstituent(pair));
-    double sourceY = getY(getSourceSubstituent(pair));
-    double targetX = getX(getTargetSubstituent(pair));
-    double targetY = getY(getTargetSubstituent(pair));
-    
-    boolean sourceAbove = GeometryKit.pointAbove(line1, sourceX, sourceY);
-    boolean targetAbove = GeometryKit.pointAbove(line1, targetX, targetY);
-    
-    if (sourceAbove && targetAbove)
+    if (plan == null)
     {
-      translation = -translation;
+      return;
     }
-    
-    GeometryKit.translate(line2, -2 * translation);
-    GeometryKit.shortenToCenter(line2, 0.25);
-
-    GeneralPath path = new GeneralPath();
-
-    path.append(line1, false);
-    path.append(line2, false);
-
-    return path;
-  }
-  
-  private Shape create11DisubstitutedDoubleBondShape(IBond pair)
-  {
-    Line2D line1 = createLine(pair);
-    Line2D line2 = createLine(pair);
-    double translation = 0.5 * atomPairLength * lineSpacing;
 
-    GeometryKit.translate(line1, translation);
-    GeometryKit.translate(line2, -translation);
+    Rectangle clip = g.getClipBounds();
 
-    GeneralPath path = new GeneralPath();
-
-    path.append(line1, false);
-    path.append(line2, false);
-
-    return path;
-  }
-  
-  private Shape createTriSubstitutedDoubleBondShape(IBond pair)
-  {
-    Line2D line1 = createLine(pair);
-    Line2D line2 = createLine(pair);
-    double translation = 0.5 * atomPairLength * lineSpacing;
-    
-    double x = 0;
-    double y = 0;
-    
-    if (structure.getConnectedBondsCount(pair.getAtom(0)) == 2)
+    if (clip == null)
     {
-      x = getX(getSourceSubstituent(pair));
-      y = getY(getSourceSubstituent(pair));
+      plan.paint(g, bounds);
     }
-    
+
     else
     {
-      x = getX(getTargetSubstituent(pair));
-      y = getY(getTargetSubstituent(pair));
+      plan.paint(g, bounds, clip);
     }
-    
-    boolean above = GeometryKit.pointAbove(line1, x, y);
-    
-    if (above)
-    {
-      translation = -translation;
-    }
-
-    GeometryKit.translate(line2, -2 * translation);
-    GeometryKit.shortenToCenter(line2, 0.25);
-
-    GeneralPath path = new GeneralPath();
-
-    path.append(line1, false);
-    path.append(line2, false);
-
-    return path;
   }
-  
-  private Shape createTetrasubstitutedBondShape(IBond pair)
-  {
-    findSSSR();
-    
-    if (sssr.getAtomContainerCount() == 0 || !isBondInCycle(pair))
-    {
-      return create11DisubstitutedDoubleBondShape(pair);
-    }
 
-    return createRingTetrasubstitutedBondShape(pair);
-  }
-  
-  private Shape createRingTetrasubstitutedBondShape(IBond pair)
+  /**
+   * Paints a draft of the current plan, within the clip of <code>g</code>. See
+   * {@link RenderPlan#paintDraft(Graphics2D, Rectangle2D, Rectangle2D)}.
+   */
+  void paintDraft(Graphics2D g, Rectangle2D bounds)
   {
-    IAtom anchor = getTetrasubRingBondAnchor(pair);
-    
-    if (anchor == null)
-    {
-      return this.create11DisubstitutedDoubleBondShape(pair);
-    }
-    
-    Line2D line1 = createLine(pair);
-    Line2D line2 = createLine(pair);
-    double translation = 0.5 * atomPairLength * lineSpacing;
-    
-    if (GeometryKit.pointAbove(line1, getX(anchor), getY(anchor)))
+    if (plan != null)
     {
-      translation = -translation;
+      plan.paintDraft(g, bounds, g.getClipBounds());
     }
-    
-    GeometryKit.translate(line2, -2 * translation);
-    GeometryKit.shortenToCenter(line2, 0.25);
-
-    GeneralPath path = new GeneralPath();
-
-    path.append(line1, false);
-    path.append(line2, false);
-    
-    return path;
   }
-  
-  private IAtom getTetrasubRingBondAnchor(IBond bond)
-  {   
-    Set<IAtom> ringBondSubstituents = createRingSubstituentSet(bond);
-    
-    if (ringBondSubstituents.size() == 2)
-    {
-      return (IAtom) ringBondSubstituents.toArray()[0];
-    }
-    
-    if (ringBondSubstituents.size() == 3)
-    {
-      List<IAtom> connected = structure.getConnectedAtomsList(bond.getAtom(0));
-      
-      connected.addAll(structure.getConnectedAtomsList(bond.getAtom(1)));
-      connected.remove(bond.getAtom(1));
-      connected.remove(bond.getAtom(0));
-      connected.removeAll(ringBondSubstituents);
-      
-      if (connected.size() != 1)
-      {
-        System.out.println("*** paint error ***");
-      }
-      
-      IAtom sourceTarget = null;
-      
-      if (connected.get(0) == bond.getAtom(0))
-      {
-        sourceTarget = bond.getAtom(0);
-      }
-      
-      else
-      {
-        sourceTarget = bond.getAtom(1);
-      }
-      
-      Iterator it = ringBondSubstituents.iterator();
-      
-      while (it.hasNext())
-      {
-        IAtom atom = (IAtom) it.next();
-        
-        if (structure.getBond(atom, sourceTarget) == null)
-        {
-          return atom;
-        }
-      }
-    }
-    
-    if (ringBondSubstituents.size() == 4)
-    {
-      detectAromaticity(sssr);
-      
-      Iterator it = ringBondSubstituents.iterator();
-      
-      while (it.hasNext())
-      {
-        IAtom atom = (IAtom) it.next();
-        
-        for (int i = 0; i < sssr.getAtomContainerCount(); i++)
-        {
-          IAtomContainer ring = sssr.getAtomContainer(i);
-          
-          if (ring.contains(atom) && ring.getAtomCount() == 6 && atom.getFlag(CDKConstants.ISAROMATIC))
-          {
-            return atom;
-          }
-        }
-      }
-    }
 
-    return null;
+  /* (non-Javadoc)
+   * @see net.sf.structure.paint.GraphicsPainter#importSettings(net.sf.structure.paint.GraphicsPainter.SettingsImporter)
+   */
+  public void importSettings(SettingsImporter importer)
+  {
+    applySettings(importer);
+    layout();
   }
   
-  private boolean isBondInCycle(IBond bond)
+  /**
+   * Takes the settings of <code>importer</code> without laying out the current
+   * structure again. The current plan is painted until the next layout.
+   */
+  void applySettings(SettingsImporter importer)
   {
-    for (int i = 0; i < sssr.getAtomContainerCount(); i++)
-    {
-      IAtomContainer ring = sssr.getAtomContainer(i);
-      
-      for (int j = 0; j < ring.getBondCount(); j++)
-      {
-        if (bond.equals(ring.getBond(j)))
-        {
-          return true;
-        }
-      }
-    }
-    
-    return false;
+    this.antialiasing = importer.getAntialiasing();
+    this.atomHeight = importer.getAtomLabelHeight();
+    this.colorScheme = importer.getColorScheme();
+    this.lineSpacing = importer.getLineSpacing();
+    this.lineThickness = importer.getLineThickness();
   }
-  
-  private void detectAromaticity(IRingSet ringSet)
+
+  /* (non-Javadoc)
+   * @see net.sf.structure.paint.GraphicsPainter#exportSettings(net.sf.structure.paint.GraphicsPainter.SettingsExporter)
+   */
+  public void exportSettings(SettingsExporter exporter)
   {
-    if (aromaticityDetected)
-    {
-      return;
-    }
-    
-    try
-    {
-      CDKHueckelAromaticityDetector.detectAromaticity(structure);
-    }
-    
-    catch (CDKException e)
-    {
-      e.printStackTrace();
-    }
-    
-    aromaticityDetected = false;
+    exporter.setAntialiasing(antialiasing);
+    exporter.setAtomLabelHeight(atomHeight);
+    exporter.setColorScheme(colorScheme);
+    exporter.setLineSpacing(lineSpacing);
+    exporter.setLineThickness(lineThickness);
   }
   
-  private void findSSSR()
+  private void layout()
   {
-    if (sssr == null)
+    this.builder = null;
+    
+    if (structure == null)
     {
-      SSSRFinder finder = new SSSRFinder(structure);
+      this.plan = null;
       
-      sssr = finder.findSSSR();
+      return;
     }
-  }
-  
-  private Set<IAtom> createRingSubstituentSet(IBond bond)
-  {
-    Set<IAtom> ringSubs = new HashSet<IAtom>();
     
-    for (int i = 0; i < sssr.getAtomContainerCount(); i++)
+    RenderPlanBuilder planBuilder = createBuilder(structure);
+    
+    if (!incrementalLayout)
     {
-      IAtomContainer ring = sssr.getAtomContainer(i);
+      this.plan = planBuilder.build();
+      this.ringIndex = planBuilder.getComputedRingIndex();
       
-      ringSubs.addAll(ring.getConnectedAtomsList(bond.getAtom(0)));
-      ringSubs.addAll(ring.getConnectedAtomsList(bond.getAtom(1)));
-      
-      ringSubs.remove(bond.getAtom(1));
-      ringSubs.remove(bond.getAtom(0));
+      return;
     }
     
-    return ringSubs;
-  }
-  
-  private Shape createTripleBondShape(IBond pair)
-  {
-    Line2D line1 = createLine(pair);
-    Line2D line2 = createLine(pair);
-    Line2D line3 = createLine(pair);
-
-    double translation = atomPairLength * lineSpacing;
-
-    GeometryKit.translate(line1, translation);
-    GeometryKit.translate(line3, -translation);
-
-    GeneralPath path = new GeneralPath();
-
-    path.append(line1, false);
-    path.append(line2, false);
-    path.append(line3, false);
-
-    return path;
-  }
-  
-  private Shape createQuadrupleBondShape(IBond pair) {
-    // TODO how should quadruple bonds be represented?
-    return createTripleBondShape(pair);
-  }
-  
-  private Line2D createLine(IBond pair)
-  {
-    double sourceX = getX(pair.getAtom(0));
-    double sourceY = getY(pair.getAtom(0));
-    double targetX = getX(pair.getAtom(1));
-    double targetY = getY(pair.getAtom(1));
-    Line2D line =
-      new Line2D.Double(sourceX, sourceY, targetX, targetY);
-      
-    Shape sourceShape = getShape(pair.getAtom(0));
-    Shape targetShape = getShape(pair.getAtom(1));
+    this.builder = planBuilder;
+    this.updating = true;
     
-    if (sourceShape != null)
+    try
     {
-      GeometryKit.trimLine(line, sourceShape.getBounds2D());
+      this.plan = builder.build();
+      this.ringIndex = builder.getComputedRingIndex();
     }
     
-    if (targetShape != null)
+    finally
     {
-      GeometryKit.trimLine(line, targetShape.getBounds2D());
+      this.updating = false;
     }
-    
-    return line;     
   }
   
-  private Rectangle2D createPerimeter()
+  private void listen(boolean listening)
   {
-    Iterator it = atomPairToShape.values().iterator();
-    Rectangle2D result = ((Shape) it.next()).getBounds2D();
-    
-    while(it.hasNext())
-    { 
-      Rectangle2D.union(result, ((Shape) it.next()).getBounds2D(), result);
-    }
-    
-    it = atomToShape.values().iterator();
-    
-    while (it.hasNext())
+    if (structure == null || !incrementalLayout)
     {
-      Shape shape = (Shape) it.next(); 
-      
-      Rectangle2D.union(result, shape.getBounds2D(), result);
+      return;
     }
     
-    double correction = 0.5 * lineThickness * atomPairLength;
-    //TODO only apply correction on boundary not intersecting atom label
-    
-    result.setRect(result.getX() - correction, result.getY() - correction, result.getWidth() + 2 * correction, result.getHeight() + 2 * correction);
-
-    return result;      
-  }
-  
-  private void prepaint(Graphics2D g, Rectangle2D bounds)
-  {
-    prepareGraphics(g, perimeter.getBounds2D(), bounds);
-  }
-  
-  private void paintAtomPairs(Graphics2D g)
-  {
-    Color color = g.getColor();
-    Stroke gStroke = g.getStroke();
-    
-    setAtomPairStroke(g, atomPairLength);
-    
-    g.setColor(Color.BLACK);
-    
-    for (int i = 0; i < structure.getBondCount(); i++)
+    if (listening)
     {
-      g.draw(getShape(structure.getBond(i)));
+      structure.addListener(listener);
     }
     
-    g.setStroke(gStroke);
-    g.setColor(color);
-  }
-  
-  private void setAtomPairStroke(Graphics2D g, double atomPairLength)
-  {
-    g.setStroke(new BasicStroke((float) (lineThickness * atomPairLength),
-    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-  }
-  
-  private Shape getShape(IBond pair)
-  {
-    return (Shape) atomPairToShape.get(pair);
-  }
-  
-  private void paintAtoms(Graphics2D g)
-  {
-    setAtomStroke(g, atomPairLength);
-    
-    Color gColor = g.getColor();
-    
-    for (int i = 0; i < structure.getAtomCount(); i++)
+    else
     {
-      paintAtom(structure.getAtom(i), g);
+      structure.removeListener(listener);
     }
-    
-    g.setColor(gColor);
   }
   
-  private void paintAtom(IAtom atom, Graphics2D g)
+  private final class StructureListener implements IChemObjectListener
   {
-    Shape circle = getShape(atom);
-    
-    if (circle != null)
+    /* (non-Javadoc)
+     * @see org.openscience.cdk.interfaces.IChemObjectListener#stateChanged(org.openscience.cdk.interfaces.IChemObjectChangeEvent)
+     */
+    public void stateChanged(IChemObjectChangeEvent event)
     {
-      Rectangle2D constraint = circle.getBounds2D();
-      AffineTransform at = g.getTransform();
-      
-      setColor(g, atom);
-      
-      Font font = new Font("SansSerif", Font.BOLD, 6); // a basic font
-      GlyphVector gv =
-        font.createGlyphVector(g.getFontRenderContext(), atom.getSymbol().toString());
-      Shape glyph1 = gv.getGlyphOutline(0);
-      GeneralPath glyph = new GeneralPath();
+      if (builder == null)
+      {
+        return;
+      }
       
-      glyph.append(glyph1, false);
+      builder.addChange(event.getSource());
       
-      if (atom.getSymbol().toString().length() == 2)
+      // changes made while laying out, such as perceived aromaticity, are taken up by the running layout
+      if (updating)
       {
-        Shape glyph2 = gv.getGlyphOutline(1);
-        
-        glyph.append(glyph2, false);
+        return;
       }
       
-      Rectangle2D glyphBounds = glyph.getBounds2D();
-
-      double coordX = getX(atom);
-      double coordY = getY(atom);
-      
-      double scaleY = 0.7 * (constraint.getHeight() / glyphBounds.getHeight());
-      double x = coordX - 0.57 * scaleY * (glyphBounds.getWidth()); // 0.57 needed to center!
-      double y = coordY + 0.5 * scaleY * glyphBounds.getHeight();
+      updating = true;
       
-      g.translate(x, y);
-      g.scale(scaleY, scaleY);
-
-      g.fill(glyph);
-
-      g.setTransform(at);
-    }
-  }
-  
-  private void setAtomStroke(Graphics2D g, double atomPairLength)
-  {
-    g.setStroke(new BasicStroke((float) (lineThickness * atomPairLength),
-    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-  }
-  
-  private Shape getShape(IAtom atom)
-  {
-    return (Shape) atomToShape.get(atom);
-  }
-  
-  private void setColor(Graphics2D g, IAtom atom)
-  {
-    Color color = colorScheme.getColor(atom);
-    
-    g.setColor(color);
-  }
-  
-  private void postpaint(Graphics2D g, Rectangle2D bounds)
-  {
-    
-  }
-  
-  private void prepareGraphics(Graphics2D g, Rectangle2D renderBounds, Rectangle2D contextBounds)
-  {
-    prepareCoordinateSystem(g, contextBounds);
-    scaleGraphics(g, renderBounds, contextBounds);
-    translateGraphics(g, renderBounds, contextBounds);
-    setRenderingHints(g);
-  }
-  
-  private void prepareCoordinateSystem(Graphics2D g, Rectangle2D contextBounds)
-  {
-    
-  }
-  
-  private void scaleGraphics(Graphics2D g, Rectangle2D renderBounds, Rectangle2D contextBounds)
-  {
-    Rectangle2D mBounds = renderBounds;
-    Rectangle2D rBounds = contextBounds;
-
-    double scaleX = rBounds.getWidth() / mBounds.getWidth();
-    double scaleY = rBounds.getHeight() / mBounds.getHeight();
-
-    if (scaleX > scaleY)
-    {
-      g.scale(scaleY, scaleY);
-    }
-
-    else
-    {
-      g.scale(scaleX, scaleX);
-    }
-  }
-  
-  /**
-   * Sets the rendering hints for the specified <code>Graphics2D</code> context.
-   * 
-   * @param g the <code>Graphics2D</code> context
-   */
-  private void setRenderingHints(Graphics2D g)
-  {
-    if (antialiasing)
-    {  
-      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    }
-  }
-  
-  private void translateGraphics(Graphics2D g, Rectangle2D renderBounds, Rectangle2D contextBounds)
-  {
-    Rectangle2D pBounds = renderBounds;
-    Rectangle2D cBounds = contextBounds;
-    double scale = g.getTransform().getScaleX();
-    double dx = -pBounds.getX() * scale + 0.5 * (cBounds.getWidth() - pBounds.getWidth() * scale);
-    double dy = -pBounds.getY() * scale + 0.5 * (cBounds.getHeight() - pBounds.getHeight() * scale);
-
-    g.translate(dx / scale, dy / scale);
-  }
-  
-  private double getAverageAtomDistance(IAtomContainer structure)
-  {
-    double average = 0;
-
-    if (structure != null)
-    {
-      double sum = 0;
+      try
+      {
+        plan = builder.update();
+      }
       
-      for (int i = 0; i < structure.getBondCount(); i++)
+      finally
       {
-        IBond bond = structure.getBond(i);
-        
-        double x1 = getX(bond.getAtom(0));
-        double y1 = getY(bond.getAtom(0));
-        double x2 = getX(bond.getAtom(1));
-        double y2 = getY(bond.getAtom(1));
-        
-        sum += GeometryKit.getDistance(x1, y1, x2, y2);
+        updating = false;
       }
-
-      average = sum / structure.getBondCount();
     }
-
-    return average;
   }
 }
@@ -0,0 +1,175 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A bounded, thread-safe cache of atom label outlines, keyed by label text. Shaping
+ * a label with the font machinery is expensive; with the cache, each distinct label
+ * is shaped once and every later use is a lookup followed by an affine transform.
+ * </p>
+ *
+ * <p>
+ * Outlines are produced in font units and are independent of any <code>Graphics2D</code>
+ * context, so a label looks the same at every output size. When the cache is full, the least recently used label is evicted.
+ * </p>
+ */
+final class LabelCache
+{
+  private static final Font FONT = new Font("SansSerif", Font.BOLD, 6); // a basic font
+  // shape as if magnified, so outlines carry no hinting for a particular device size
+  private static final FontRenderContext CONTEXT =
+    new FontRenderContext(AffineTransform.getScaleInstance(100, 100), true, true);
+  private static final LabelCache SHARED = new LabelCache(256);
+
+  private Map<String, Label> labels;
+
+  /**
+   * Constructs a <code>LabelCache</code> holding at most <code>capacity</code> labels.
+   *
+   * @param capacity the maximum number of cached labels
+   */
+  LabelCache(final int capacity)
+  {
+    this.labels = new LinkedHashMap<String, Label>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1;
+
+      protected boolean removeEldestEntry(Map.Entry<String, Label> eldest)
+      {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns the cache shared by all painters.
+   *
+   * @return the shared <code>LabelCache</code>
+   */
+  static LabelCache getShared()
+  {
+    return SHARED;
+  }
+
+  /**
+   * Returns the <code>Label</code> for <code>text</code>, shaping it if it is not
+   * already cached.
+   *
+   * @param text the label text
+   * @return the <code>Label</code> for <code>text</code>
+   */
+  Label getLabel(String text)
+  {
+    synchronized (labels)
+    {
+      Label result = labels.get(text);
+
+      if (result != null)
+      {
+        return result;
+      }
+    }
+
+    // shape outside the lock; a concurrent miss on the same text only duplicates work
+    Label result = createLabel(text);
+
+    synchronized (labels)
+    {
+      labels.put(text, result);
+    }
+
+    return result;
+  }
+
+  private Label createLabel(String text)
+  {
+    GlyphVector gv = FONT.createGlyphVector(CONTEXT, text);
+    GeneralPath outline = new GeneralPath();
+
+    for (int i = 0; i < gv.getNumGlyphs(); i++)
+    {
+      outline.append(gv.getGlyphOutline(i), false);
+    }
+
+    return new Label(text, outline, outline.getBounds2D());
+  }
+
+  /**
+   * The shaped outline of a label, in font units. A <code>Label</code> is shared
+   * between threads and must never be modified.
+   */
+  static final class Label
+  {
+    private final String text;
+    private final Shape outline;
+    private final Rectangle2D bounds;
+
+    private Label(String text, Shape outline, Rectangle2D bounds)
+    {
+      this.text = text;
+      this.outline = outline;
+      this.bounds = bounds;
+    }
+
+    /**
+     * Returns the label text.
+     *
+     * @return the label text
+     */
+    String getText()
+    {
+      return text;
+    }
+
+    /**
+     * Returns the outline of the label. The returned shape must not be modified.
+     *
+     * @return the outline of the label
+     */
+    Shape getOutline()
+    {
+      return outline;
+    }
+
+    /**
+     * Returns the bounds of the outline. The returned rectangle must not be modified.
+     *
+     * @return the bounds of the outline
+     */
+    Rectangle2D getBounds()
+    {
+      return bounds;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for <code>LabelCache</code>. Kept in the package of the class it tests, which
+ * is not public.
+ */
+public class LabelCacheTest extends TestCase
+{
+  private static final String[] LABELS = { "N", "O", "S", "Cl", "Br", "NH", "OH" };
+
+  public void testCachedLabelPaintsLikeShapedLabel()
+  {
+    LabelCache cache = new LabelCache(LABELS.length);
+
+    for (int i = 0; i < LABELS.length; i++)
+    {
+      LabelCache.Label cached = cache.getLabel(LABELS[i]);
+
+      assertSame(cached, cache.getLabel(LABELS[i]));
+
+      // a new cache shapes the label again
+      LabelCache.Label shaped = new LabelCache(1).getLabel(LABELS[i]);
+      BufferedImage expected = paint(shaped);
+      BufferedImage actual = paint(cached);
+      boolean inked = false;
+
+      for (int y = 0; y < expected.getHeight(); y++)
+      {
+        for (int x = 0; x < expected.getWidth(); x++)
+        {
+          assertEquals(LABELS[i] + " at (" + x + ", " + y + ")", expected.getRGB(x, y), actual.getRGB(x, y));
+
+          inked |= (actual.getRGB(x, y) & 0xffffff) != 0xffffff;
+        }
+      }
+
+      assertTrue(LABELS[i], inked);
+      assertEquals(shaped.getBounds(), cached.getBounds());
+    }
+  }
+
+  public void testEvictsLeastRecentlyUsed()
+  {
+    LabelCache cache = new LabelCache(2);
+    LabelCache.Label nitrogen = cache.getLabel("N");
+    LabelCache.Label oxygen = cache.getLabel("O");
+
+    cache.getLabel("N");
+
+    // oxygen is now the least recently used, so sulfur takes its place
+    LabelCache.Label sulfur = cache.getLabel("S");
+
+    assertSame(nitrogen, cache.getLabel("N"));
+    assertSame(sulfur, cache.getLabel("S"));
+    assertNotSame(oxygen, cache.getLabel("O"));
+  }
+
+  private BufferedImage paint(LabelCache.Label label)
+  {
+    BufferedImage result = new BufferedImage(80, 60, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = result.createGraphics();
+
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, 80, 60);
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.setColor(Color.BLUE);
+    g.translate(4, 50);
+    g.scale(6, 6);
+    g.fill(label.getOutline());
+    g.dispose();
+
+    return result;
+  }
+}
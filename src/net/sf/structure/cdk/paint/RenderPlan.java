@@ -0,0 +1,640 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * The precomputed geometry of a 2-D structure depiction, together with the settings
+ * needed to paint it. A <code>RenderPlan</code> is created by laying out an
+ * <code>IAtomContainer</code> once, for example with
+ * {@link DefaultGraphicsPainter#createRenderPlan(org.openscience.cdk.interfaces.IAtomContainer)}.
+ * </p>
+ * 
+ * <p>
+ * <code>RenderPlan</code> is immutable and holds no reference to the structure it was
+ * created from. It may be shared freely and painted onto any number of
+ * <code>Graphics2D</code> contexts, from any number of threads at once.
+ * </p>
+ * 
+ * <p>
+ * A plan created with batch stroking holds its bonds as one <code>GeneralPath</code>,
+ * built once, and strokes it with a single <code>draw</code> call; otherwise each
+ * bond line is drawn separately.
+ * </p>
+ * 
+ * <p>
+ * Painting a region looks up the bonds and atom labels that reach into it in a grid
+ * over their bounding boxes. The grids are built on the first such paint, so plans
+ * that are only ever painted whole do not pay for them.
+ * </p>
+ * 
+ * <p>
+ * A plan created with level of detail adapts to the length of a bond in device
+ * pixels, including any scale already set on the <code>Graphics2D</code> context.
+ * Below 12 pixels, multiple bonds are drawn as a single line. Lines less than a
+ * pixel wide are stroked as hairlines, which Java 2D draws about as wide anyway.
+ * Atom labels less than 6 pixels high are drawn as dots of their color filling the
+ * label bounds, and labels less than a pixel high are skipped.
+ * </p>
+ * 
+ * @author Richard Apodaca
+ */
+public final class RenderPlan
+{
+  // level of detail thresholds, in device pixels
+  private static final double MINIMUM_MULTIPLE_BOND_LENGTH = 12;
+  private static final double MINIMUM_LABEL_HEIGHT = 6;
+  private static final double MINIMUM_DOT_SIZE = 1;
+  private static final double MINIMUM_LINE_WIDTH = 1;
+  private static final BasicStroke HAIRLINE = new BasicStroke(0);
+  private final double[] atomPairSegments;
+  private final double[] atomPairAxes;
+  private final LabelCache.Label[] atomLabels;
+  private final Color[] atomColors;
+  private final double[] labelX;
+  private final double[] labelY;
+  private final double[] labelScale;
+  private final Rectangle2D perimeter;
+  private final double atomPairLength;
+  private final double lineThickness;
+  private final boolean antialiasing;
+  private final boolean levelOfDetail;
+  private final GeneralPath atomPairPath;
+  private final BasicStroke atomPairStroke;
+  private volatile SpatialIndex atomPairIndex;
+  private volatile SpatialIndex atomPairAxisIndex;
+  private volatile SpatialIndex atomIndex;
+  
+  /**
+   * Constructs a <code>RenderPlan</code>. Bonds are given as line segments, four
+   * coordinates (x1, y1, x2, y2) per segment. The arrays are owned by the new plan
+   * and must not be modified afterwards. If <code>batchStroking</code> is
+   * <code>true</code>, bonds are painted as a single path. Level of detail applies if
+   * <code>atomPairAxes</code>, one segment per bond, is not <code>null</code>.
+   */
+  RenderPlan(double[] atomPairSegments, double[] atomPairAxes, LabelCache.Label[] atomLabels, Color[] atomColors,
+    double[] labelX, double[] labelY, double[] labelScale, Rectangle2D perimeter,
+    double atomPairLength, double lineThickness, boolean antialiasing, boolean batchStroking)
+  {
+    this.atomPairSegments = atomPairSegments;
+    this.atomPairAxes = atomPairAxes;
+    this.atomLabels = atomLabels;
+    this.atomColors = atomColors;
+    this.labelX = labelX;
+    this.labelY = labelY;
+    this.labelScale = labelScale;
+    this.perimeter = perimeter;
+    this.atomPairLength = atomPairLength;
+    this.lineThickness = lineThickness;
+    this.antialiasing = antialiasing;
+    this.levelOfDetail = atomPairAxes != null;
+    this.atomPairPath = batchStroking ? createAtomPairPath(atomPairSegments) : null;
+    this.atomPairStroke = new BasicStroke((float) (lineThickness * atomPairLength),
+      BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+  }
+  
+  /**
+   * Returns the bounding rectangle of this plan, in model coordinates.
+   * 
+   * @return a copy of the bounding rectangle of this plan
+   */
+  public Rectangle2D getBounds()
+  {
+    return perimeter.getBounds2D();
+  }
+  
+  /**
+   * Returns the average interatomic distance of the laid out structure, in model
+   * coordinates.
+   * 
+   * @return the average interatomic distance
+   */
+  public double getAtomPairLength()
+  {
+    return atomPairLength;
+  }
+  
+  /**
+   * Paints this plan onto the specified <code>Graphics2D</code> context, scaled
+   * and centered to fit <code>bounds</code>.
+   * 
+   * @param g the <code>Graphics2D</code> context
+   * @param bounds the bounding rectangle into which the plan should be painted
+   */
+  public void paint(Graphics2D g, Rectangle2D bounds)
+  {
+    double scale = getDeviceScale(g, bounds);
+    
+    prepaint(g, bounds);
+    paintAtomPairs(g, getLines(scale), null, scale);
+    paintAtoms(g, null, scale);
+    postpaint(g, bounds);
+  }
+  
+  /**
+   * Paints the part of this plan that falls within <code>region</code>, exactly as
+   * {@link #paint(Graphics2D, Rectangle2D)} paints it there. Bonds and atom labels
+   * whose bounding boxes lie outside <code>region</code> are skipped, which makes
+   * painting a small region of a large structure, such as one tile of a large image
+   * or the visible part of a zoomed-in view, proportionally cheaper. Like <code>bounds</code>, <code>region</code> is given in
+   * the coordinates of <code>g</code> before painting.
+   * 
+   * @param g the <code>Graphics2D</code> context
+   * @param bounds the bounding rectangle into which the plan should be painted
+   * @param region the region to paint
+   */
+  public void paint(Graphics2D g, Rectangle2D bounds, Rectangle2D region)
+  {
+    AffineTransform transform = g.getTransform();
+    double scale = getDeviceScale(g, bounds);
+    double[] lines = getLines(scale);
+    
+    prepaint(g, bounds);
+    
+    Rectangle2D visible = createVisibleRegion(transform, g.getTransform(), region);
+    BitSet atomPairs = visible == null ? null : findAtomPairs(lines, visible);
+    BitSet atoms = visible == null ? null : findAtoms(visible);
+    
+    paintAtomPairs(g, lines, atomPairs, scale);
+    paintAtoms(g, atoms, scale);
+    postpaint(g, bounds);
+  }
+  
+  /**
+   * Paints a draft of this plan, placed as {@link #paint(Graphics2D, Rectangle2D)}
+   * places it: bonds only, without atom labels and without antialiasing, whatever
+   * the settings of the plan. A draft costs a fraction of a full paint and suits
+   * frames painted while the user pans or zooms a view. If <code>region</code> is
+   * not <code>null</code>, only the bonds reaching into it are painted.
+   * 
+   * @param g the <code>Graphics2D</code> context
+   * @param bounds the bounding rectangle into which the plan should be painted
+   * @param region the region to paint, or <code>null</code> to paint the whole plan
+   */
+  public void paintDraft(Graphics2D g, Rectangle2D bounds, Rectangle2D region)
+  {
+    AffineTransform transform = g.getTransform();
+    double scale = getDeviceScale(g, bounds);
+    double[] lines = getLines(scale);
+    
+    prepaint(g, bounds);
+    
+    Rectangle2D visible = region == null ? null : createVisibleRegion(transform, g.getTransform(), region);
+    BitSet atomPairs = visible == null ? null : findAtomPairs(lines, visible);
+    
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+    paintAtomPairs(g, lines, atomPairs, scale);
+    postpaint(g, bounds);
+  }
+  
+  /**
+   * Returns the transform from model coordinates to the coordinates of
+   * <code>bounds</code> that <code>paint</code> applies to an untransformed context.
+   */
+  AffineTransform createTransform(Rectangle2D bounds)
+  {
+    double scale = getScale(perimeter, bounds);
+    double dx = -perimeter.getX() * scale + 0.5 * (bounds.getWidth() - perimeter.getWidth() * scale);
+    double dy = -perimeter.getY() * scale + 0.5 * (bounds.getHeight() - perimeter.getHeight() * scale);
+    
+    return new AffineTransform(scale, 0, 0, scale, dx, dy);
+  }
+  
+  /**
+   * Returns the number of bond line segments in this plan.
+   */
+  int getSegmentCount()
+  {
+    return atomPairSegments.length / 4;
+  }
+  
+  /**
+   * Returns the bond line segments, in model coordinates, as four coordinates
+   * (x1, y1, x2, y2) per segment. The array is shared and must not be modified.
+   */
+  double[] getSegments()
+  {
+    return atomPairSegments;
+  }
+  
+  /**
+   * Returns the width with which bond shapes are stroked, in model coordinates.
+   */
+  double getLineWidth()
+  {
+    return lineThickness * atomPairLength;
+  }
+  
+  /**
+   * Returns the number of atom labels in this plan.
+   */
+  int getLabelCount()
+  {
+    return atomLabels.length;
+  }
+  
+  /**
+   * Returns the outline of the atom label at <code>index</code>, in font units. The
+   * outline is shared and must not be modified.
+   */
+  Shape getLabelOutline(int index)
+  {
+    return atomLabels[index].getOutline();
+  }
+  
+  /**
+   * Returns the transform that places the outline of the atom label at
+   * <code>index</code> in model coordinates.
+   */
+  AffineTransform getLabelTransform(int index)
+  {
+    return new AffineTransform(labelScale[index], 0, 0, labelScale[index], labelX[index], labelY[index]);
+  }
+  
+  /**
+   * Returns the color of the atom label at <code>index</code>.
+   */
+  Color getLabelColor(int index)
+  {
+    return atomColors[index];
+  }
+  
+  /**
+   * Returns <code>true</code> if this plan is painted with antialiasing.
+   */
+  boolean isAntialiased()
+  {
+    return antialiasing;
+  }
+  
+  private void prepaint(Graphics2D g, Rectangle2D bounds)
+  {
+    prepareGraphics(g, perimeter.getBounds2D(), bounds);
+  }
+  
+  /**
+   * Returns the scale from model coordinates to device pixels at which
+   * <code>paint</code> draws onto <code>g</code>, including any scale already set on
+   * <code>g</code>.
+   */
+  private double getDeviceScale(Graphics2D g, Rectangle2D bounds)
+  {
+    return getScale(perimeter, bounds) * Math.sqrt(Math.abs(g.getTransform().getDeterminant()));
+  }
+  
+  /**
+   * Returns the bond lines to paint at <code>scale</code>: one per bond if the lines of
+   * multiple bonds would be too close to tell apart, otherwise all of them.
+   */
+  private double[] getLines(double scale)
+  {
+    if (levelOfDetail && atomPairLength * scale < MINIMUM_MULTIPLE_BOND_LENGTH)
+    {
+      return atomPairAxes;
+    }
+    
+    return atomPairSegments;
+  }
+  
+  /**
+   * Returns the bounds of <code>region</code> in model coordinates, widened by half a
+   * line width and a pixel so that every shape reaching into <code>region</code>
+   * intersects them. <code>region</code> is given in the coordinates of a context
+   * whose transform was <code>before</code> and is <code>after</code> once prepared
+   * for painting, whatever scale or rotation it already had. Returns
+   * <code>null</code> if the region cannot be mapped, in which case everything
+   * should be painted.
+   */
+  private Rectangle2D createVisibleRegion(AffineTransform before, AffineTransform after, Rectangle2D region)
+  {
+    try
+    {
+      AffineTransform transform = before.createInverse();
+      
+      transform.concatenate(after);
+      
+      Rectangle2D result = transform.createInverse().createTransformedShape(region).getBounds2D();
+      double pixel = Math.max(1 / Math.sqrt(Math.abs(transform.getDeterminant())),
+        1 / Math.sqrt(Math.abs(after.getDeterminant())));
+      double margin = 0.5 * getLineWidth() + pixel;
+      
+      result.setRect(result.getX() - margin, result.getY() - margin,
+        result.getWidth() + 2 * margin, result.getHeight() + 2 * margin);
+      
+      return result;
+    }
+    
+    catch (NoninvertibleTransformException e)
+    {
+      return null;
+    }
+  }
+  
+  /**
+   * Returns the segments of <code>lines</code>, either the bond line segments or the
+   * bond axes, that intersect <code>visible</code>, or <code>null</code> if all of
+   * them lie within it.
+   */
+  private BitSet findAtomPairs(double[] lines, Rectangle2D visible)
+  {
+    boolean axes = lines != atomPairSegments;
+    SpatialIndex index = axes ? atomPairAxisIndex : atomPairIndex;
+    
+    if (index == null)
+    {
+      double[] boxes = new double[lines.length];
+      
+      for (int i = 0; i < lines.length; i += 4)
+      {
+        boxes[i] = Math.min(lines[i], lines[i + 2]);
+        boxes[i + 1] = Math.min(lines[i + 1], lines[i + 3]);
+        boxes[i + 2] = Math.max(lines[i], lines[i + 2]);
+        boxes[i + 3] = Math.max(lines[i + 1], lines[i + 3]);
+      }
+      
+      index = new SpatialIndex(boxes, 2 * atomPairLength);
+      
+      if (axes)
+      {
+        atomPairAxisIndex = index;
+      }
+      
+      else
+      {
+        atomPairIndex = index;
+      }
+    }
+    
+    return find(index, visible, lines.length / 4);
+  }
+  
+  /**
+   * Returns the atom labels that intersect <code>visible</code>, or <code>null</code>
+   * if all of them lie within it.
+   */
+  private BitSet findAtoms(Rectangle2D visible)
+  {
+    SpatialIndex index = atomIndex;
+    
+    if (index == null)
+    {
+      double[] boxes = new double[4 * atomLabels.length];
+      
+      for (int i = 0; i < atomLabels.length; i++)
+      {
+        Rectangle2D outline = atomLabels[i].getBounds();
+        
+        boxes[4 * i] = labelX[i] + labelScale[i] * outline.getMinX();
+        boxes[4 * i + 1] = labelY[i] + labelScale[i] * outline.getMinY();
+        boxes[4 * i + 2] = labelX[i] + labelScale[i] * outline.getMaxX();
+        boxes[4 * i + 3] = labelY[i] + labelScale[i] * outline.getMaxY();
+      }
+      
+      index = new SpatialIndex(boxes, 2 * atomPairLength);
+      atomIndex = index;
+    }
+    
+    return find(index, visible, atomLabels.length);
+  }
+  
+  private static BitSet find(SpatialIndex index, Rectangle2D visible, int count)
+  {
+    if (index.isCoveredBy(visible))
+    {
+      return null;
+    }
+    
+    BitSet result = new BitSet(count);
+    
+    index.find(visible, result);
+    
+    return result;
+  }
+  
+  /**
+   * Returns the first index from <code>from</code> on that is in
+   * <code>selection</code>, or -1 if there is none. A <code>null</code> selection
+   * holds every index below <code>count</code>.
+   */
+  private static int next(BitSet selection, int from, int count)
+  {
+    if (selection == null)
+    {
+      return from < count ? from : -1;
+    }
+    
+    return selection.nextSetBit(from);
+  }
+  
+  private void paintAtomPairs(Graphics2D g, double[] lines, BitSet selection, double scale)
+  {
+    Color color = g.getColor();
+    Stroke gStroke = g.getStroke();
+    // a hairline is far cheaper to stroke than a wide line of less than a pixel
+    if (levelOfDetail && getLineWidth() * scale < MINIMUM_LINE_WIDTH)
+    {
+      g.setStroke(HAIRLINE);
+    }
+    
+    else
+    {
+      g.setStroke(atomPairStroke);
+    }
+    
+    g.setColor(Color.BLACK);
+    
+    if (atomPairPath != null && selection == null && lines == atomPairSegments)
+    {
+      g.draw(atomPairPath);
+    }
+    
+    else
+    {
+      GeneralPath path = atomPairPath == null ? null : new GeneralPath();
+      Line2D.Double line = new Line2D.Double();
+      int count = lines.length / 4;
+      
+      for (int j = next(selection, 0, count); j >= 0; j = next(selection, j + 1, count))
+      {
+        int i = 4 * j;
+        
+        if (path != null)
+        {
+          path.moveTo((float) lines[i], (float) lines[i + 1]);
+          path.lineTo((float) lines[i + 2], (float) lines[i + 3]);
+        }
+        
+        else
+        {
+          line.setLine(lines[i], lines[i + 1], lines[i + 2], lines[i + 3]);
+          g.draw(line);
+        }
+      }
+      
+      if (path != null)
+      {
+        g.draw(path);
+      }
+    }
+    
+    g.setStroke(gStroke);
+    g.setColor(color);
+  }
+  
+  private static GeneralPath createAtomPairPath(double[] segments)
+  {
+    GeneralPath result = new GeneralPath(GeneralPath.WIND_NON_ZERO, segments.length / 2);
+    
+    for (int i = 0; i < segments.length; i += 4)
+    {
+      result.moveTo((float) segments[i], (float) segments[i + 1]);
+      result.lineTo((float) segments[i + 2], (float) segments[i + 3]);
+    }
+    
+    return result;
+  }
+  
+  /**
+   * Paints the selected atom labels, as outlines, as dots or not at all, depending on
+   * their height at <code>scale</code>.
+   */
+  private void paintAtoms(Graphics2D g, BitSet selection, double scale)
+  {
+    Color gColor = g.getColor();
+    Ellipse2D.Double dot = new Ellipse2D.Double();
+    
+    for (int i = next(selection, 0, atomLabels.length); i >= 0; i = next(selection, i + 1, atomLabels.length))
+    {
+      Rectangle2D outline = atomLabels[i].getBounds();
+      double height = labelScale[i] * outline.getHeight();
+      
+      if (!levelOfDetail || height * scale >= MINIMUM_LABEL_HEIGHT)
+      {
+        paintAtom(i, g);
+      }
+      
+      else if (height * scale >= MINIMUM_DOT_SIZE)
+      {
+        dot.setFrame(labelX[i] + labelScale[i] * outline.getX(), labelY[i] + labelScale[i] * outline.getY(),
+          labelScale[i] * outline.getWidth(), height);
+        g.setColor(atomColors[i]);
+        g.fill(dot);
+      }
+    }
+    
+    g.setColor(gColor);
+  }
+  
+  private void paintAtom(int index, Graphics2D g)
+  {
+    AffineTransform at = g.getTransform();
+    
+    g.setColor(atomColors[index]);
+    g.translate(labelX[index], labelY[index]);
+    g.scale(labelScale[index], labelScale[index]);
+    g.fill(atomLabels[index].getOutline());
+    g.setTransform(at);
+  }
+  
+  private void postpaint(Graphics2D g, Rectangle2D bounds)
+  {
+    
+  }
+  
+  private void prepareGraphics(Graphics2D g, Rectangle2D renderBounds, Rectangle2D contextBounds)
+  {
+    prepareCoordinateSystem(g, contextBounds);
+    scaleGraphics(g, renderBounds, contextBounds);
+    translateGraphics(g, renderBounds, contextBounds);
+    setRenderingHints(g);
+  }
+  
+  private void prepareCoordinateSystem(Graphics2D g, Rectangle2D contextBounds)
+  {
+    
+  }
+  
+  private void scaleGraphics(Graphics2D g, Rectangle2D renderBounds, Rectangle2D contextBounds)
+  {
+    double scale = getScale(renderBounds, contextBounds);
+    
+    g.scale(scale, scale);
+  }
+  
+  private double getScale(Rectangle2D renderBounds, Rectangle2D contextBounds)
+  {
+    Rectangle2D mBounds = renderBounds;
+    Rectangle2D rBounds = contextBounds;
+
+    double scaleX = rBounds.getWidth() / mBounds.getWidth();
+    double scaleY = rBounds.getHeight() / mBounds.getHeight();
+
+    if (scaleX > scaleY)
+    {
+      return scaleY;
+    }
+
+    else
+    {
+      return scaleX;
+    }
+  }
+  
+  /**
+   * Sets the rendering hints for the specified <code>Graphics2D</code> context.
+   * 
+   * @param g the <code>Graphics2D</code> context
+   */
+  private void setRenderingHints(Graphics2D g)
+  {
+    if (antialiasing)
+    {  
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+  }
+  
+  private void translateGraphics(Graphics2D g, Rectangle2D renderBounds, Rectangle2D contextBounds)
+  {
+    Rectangle2D pBounds = renderBounds;
+    Rectangle2D cBounds = contextBounds;
+    double scale = getScale(pBounds, cBounds);
+    double dx = -pBounds.getX() * scale + 0.5 * (cBounds.getWidth() - pBounds.getWidth() * scale);
+    double dy = -pBounds.getY() * scale + 0.5 * (cBounds.getHeight() - pBounds.getHeight() * scale);
+
+    g.translate(dx / scale, dy / scale);
+  }
+}
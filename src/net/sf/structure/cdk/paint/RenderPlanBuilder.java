@@ -0,0 +1,1183 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.LinkedHashSet;
+
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+import java.lang.reflect.Array;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.exception.CDKException;
+
+import net.sf.structure.cdk.util.GeometryKit;
+
+/**
+ * <p>
+ * Computes the geometry of a 2-D structure depiction and captures it in a
+ * <code>RenderPlan</code>. A builder is used by a single thread.
+ * </p>
+ * 
+ * <p>
+ * A builder may be kept after {@link #build()} to follow edits of its structure. The
+ * atoms, bonds and structure reported changed through {@link #addChange(Object)} are
+ * laid out again by {@link #update()}, which touches only the changed atoms, the
+ * bonds of the changed atoms and of their neighbors, whose double bond placement
+ * depends on them, and the bounds if a changed shape reached their edge. The bond
+ * length that sizes labels, lines and spacing is kept from the last full layout until
+ * the average bond length drifts from it by more than one percent.
+ * </p>
+ * 
+ * @author Richard Apodaca
+ */
+final class RenderPlanBuilder
+{
+  private static final int MAXIMUM_LINES = 3;
+  private static final double LENGTH_TOLERANCE = 0.01;
+  
+  private IAtomContainer structure;
+  private ColorScheme colorScheme;
+  private StructureGraph graph;
+  private Rectangle2D[] atomBounds;
+  private LabelCache.Label[] atomLabels;
+  private Color[] atomColors;
+  private double[] labelX;
+  private double[] labelY;
+  private double[] labelScale;
+  private double[] segments;
+  private int[] lineCounts;
+  private double[] bondLengths;
+  private double bondLengthSum;
+  private double[] extent;
+  private Rectangle2D perimeter;
+  private double atomPairLength;
+  private double atomHeight;
+  private double lineSpacing;
+  private double lineThickness;
+  private boolean antialiasing;
+  private boolean batchStroking;
+  private boolean levelOfDetail;
+  private RingIndex ringIndex;
+  private boolean aromaticityDetected;
+  private LabelCache labelCache;
+  private Map<IBond, Integer> bondIndices;
+  private List<IAtom> changedAtoms;
+  private List<IBond> changedBonds;
+  private boolean structureChanged;
+  
+  /**
+   * Constructs a <code>RenderPlanBuilder</code> for <code>structure</code> using
+   * the specified settings.
+   * 
+   * @param structure the structure to lay out
+   * @param colorScheme the color scheme for atom labels
+   * @param atomHeight the atom label height, in terms of average interatomic distance
+   * @param lineSpacing the line spacing, in terms of average interatomic distance
+   * @param lineThickness the line thickness, in terms of average interatomic distance
+   * @param antialiasing <code>true</code> if the plan should be painted with antialiasing
+   * @param batchStroking <code>true</code> if the plan should stroke bonds as a single path
+   * @param levelOfDetail <code>true</code> if the plan should adapt its detail to the
+   * bond length in device pixels
+   */
+  RenderPlanBuilder(IAtomContainer structure, ColorScheme colorScheme, double atomHeight,
+    double lineSpacing, double lineThickness, boolean antialiasing, boolean batchStroking,
+    boolean levelOfDetail)
+  {
+    this.structure = structure;
+    this.colorScheme = colorScheme;
+    this.atomHeight = atomHeight;
+    this.lineSpacing = lineSpacing;
+    this.lineThickness = lineThickness;
+    this.antialiasing = antialiasing;
+    this.batchStroking = batchStroking;
+    this.levelOfDetail = levelOfDetail;
+    this.graph = null;
+    this.atomBounds = null;
+    this.segments = null;
+    this.lineCounts = null;
+    this.bondLengths = null;
+    this.extent = null;
+    this.perimeter = null;
+    this.atomPairLength = 0;
+    this.ringIndex = null;
+    this.aromaticityDetected = false;
+    this.labelCache = LabelCache.getShared();
+    this.bondIndices = null;
+    this.changedAtoms = new ArrayList<IAtom>();
+    this.changedBonds = new ArrayList<IBond>();
+    this.structureChanged = false;
+  }
+  
+  private double getX(int atom)
+  {
+    return graph.getX(atom);
+  }
+  
+  private double getY(int atom)
+  {
+    return graph.getY(atom);
+  }
+  
+  /**
+   * Lays out the structure and returns the resulting <code>RenderPlan</code>.
+   * 
+   * @return the new <code>RenderPlan</code>
+   */
+  public RenderPlan build()
+  {
+    this.graph = new StructureGraph(structure);
+    this.atomBounds = new Rectangle2D[graph.getAtomCount()];
+    this.atomLabels = new LabelCache.Label[graph.getAtomCount()];
+    this.atomColors = new Color[graph.getAtomCount()];
+    this.labelX = new double[graph.getAtomCount()];
+    this.labelY = new double[graph.getAtomCount()];
+    this.labelScale = new double[graph.getAtomCount()];
+    this.segments = new double[4 * MAXIMUM_LINES * graph.getBondCount()];
+    this.lineCounts = new int[graph.getBondCount()];
+    this.bondLengths = new double[graph.getBondCount()];
+    this.atomPairLength = getAverageAtomDistance();
+    this.aromaticityDetected = false;
+    
+    if (ringIndex != null && !ringIndex.isIndexOf(structure))
+    {
+      this.ringIndex = null;
+    }
+    this.bondIndices = null;
+    
+    createAtomShapes();
+    createAtomPairShapes();
+    
+    this.perimeter = createPerimeter();
+    
+    // changes reported while laying out are already included
+    changedAtoms.clear();
+    changedBonds.clear();
+    structureChanged = false;
+    
+    return createRenderPlan();
+  }
+  
+  /**
+   * Records a change to the structure, reported by an <code>IChemObjectChangeEvent</code>
+   * from <code>source</code>: an atom, a bond, or anything else, which stands for
+   * the structure itself.
+   * 
+   * @param source the object that changed
+   */
+  void addChange(Object source)
+  {
+    if (source instanceof IAtom)
+    {
+      changedAtoms.add((IAtom) source);
+    }
+    
+    else if (source instanceof IBond)
+    {
+      changedBonds.add((IBond) source);
+    }
+    
+    else
+    {
+      structureChanged = true;
+    }
+  }
+  
+  /**
+   * Lays out again the parts of the structure affected by the changes recorded since
+   * the last layout and returns the resulting <code>RenderPlan</code>. If atoms or
+   * bonds were removed or reordered, if new bonds may have closed a ring, or if the
+   * average bond length has drifted too far, the whole structure is laid out again.
+   * 
+   * @return the new <code>RenderPlan</code>
+   */
+  RenderPlan update()
+  {
+    if (graph == null || !(atomPairLength > 0))
+    {
+      return build();
+    }
+    
+    while (structureChanged || !changedAtoms.isEmpty() || !changedBonds.isEmpty())
+    {
+      BitSet atoms = new BitSet();
+      BitSet pairs = new BitSet();
+      
+      if (structureChanged)
+      {
+        structureChanged = false;
+        
+        if (!appendStructure(atoms, pairs))
+        {
+          return build();
+        }
+      }
+      
+      if (!addChangedBonds(pairs))
+      {
+        return build();
+      }
+      
+      addChangedAtoms(atoms);
+      
+      if (!updateBondLengths(atoms))
+      {
+        return build();
+      }
+      
+      if (!pairs.isEmpty() && aromaticityDetected)
+      {
+        // bond orders may have changed; perceive again and report atoms whose flags changed
+        aromaticityDetected = false;
+        detectAromaticity();
+      }
+      
+      layout(atoms, pairs);
+    }
+    
+    return createRenderPlan();
+  }
+  
+  /**
+   * Takes over atoms and bonds appended to the structure, marking them and the atoms
+   * they join as changed. Returns <code>false</code> if the structure changed in any
+   * other way, or if a new bond does not lead to a new atom without other bonds and
+   * so may have closed a ring.
+   */
+  private boolean appendStructure(BitSet atoms, BitSet pairs)
+  {
+    int atomCount = graph.getAtomCount();
+    int bondCount = graph.getBondCount();
+    
+    if (structure.getAtomCount() < atomCount || structure.getBondCount() < bondCount)
+    {
+      return false;
+    }
+    
+    for (int i = 0; i < atomCount; i++)
+    {
+      if (structure.getAtom(i) != graph.getAtom(i))
+      {
+        return false;
+      }
+    }
+    
+    for (int i = 0; i < bondCount; i++)
+    {
+      if (!isSameBond(i, structure.getBond(i)))
+      {
+        return false;
+      }
+    }
+    
+    if (structure.getAtomCount() == atomCount && structure.getBondCount() == bondCount)
+    {
+      return true;
+    }
+    
+    StructureGraph appended = new StructureGraph(structure);
+    
+    for (int i = bondCount; i < appended.getBondCount(); i++)
+    {
+      int source = appended.getSource(i);
+      int target = appended.getTarget(i);
+      
+      if (!(source >= atomCount && appended.getDegree(source) == 1) &&
+        !(target >= atomCount && appended.getDegree(target) == 1))
+      {
+        return false;
+      }
+    }
+    
+    this.graph = appended;
+    this.atomBounds = (Rectangle2D[]) resize(atomBounds, graph.getAtomCount());
+    this.atomLabels = (LabelCache.Label[]) resize(atomLabels, graph.getAtomCount());
+    this.atomColors = (Color[]) resize(atomColors, graph.getAtomCount());
+    this.labelX = (double[]) resize(labelX, graph.getAtomCount());
+    this.labelY = (double[]) resize(labelY, graph.getAtomCount());
+    this.labelScale = (double[]) resize(labelScale, graph.getAtomCount());
+    this.segments = (double[]) resize(segments, 4 * MAXIMUM_LINES * graph.getBondCount());
+    this.lineCounts = (int[]) resize(lineCounts, graph.getBondCount());
+    this.bondLengths = (double[]) resize(bondLengths, graph.getBondCount());
+    
+    atoms.set(atomCount, graph.getAtomCount());
+    
+    for (int i = bondCount; i < graph.getBondCount(); i++)
+    {
+      bondLengths[i] = getLength(i);
+      bondLengthSum += bondLengths[i];
+      pairs.set(i);
+      atoms.set(graph.getSource(i));
+      atoms.set(graph.getTarget(i));
+      
+      if (bondIndices != null)
+      {
+        bondIndices.put(graph.getBond(i), Integer.valueOf(i));
+      }
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Marks the changed bonds of the structure. Returns <code>false</code> if a bond
+   * now joins other atoms.
+   */
+  private boolean addChangedBonds(BitSet pairs)
+  {
+    if (changedBonds.isEmpty())
+    {
+      return true;
+    }
+    
+    if (bondIndices == null)
+    {
+      bondIndices = new HashMap<IBond, Integer>();
+      
+      for (int i = 0; i < graph.getBondCount(); i++)
+      {
+        bondIndices.put(graph.getBond(i), Integer.valueOf(i));
+      }
+    }
+    
+    for (int i = 0; i < changedBonds.size(); i++)
+    {
+      Integer pair = bondIndices.get(changedBonds.get(i));
+      
+      // a bond not yet in the structure is taken over with the structure change
+      if (pair != null)
+      {
+        if (!isSameBond(pair.intValue(), changedBonds.get(i)))
+        {
+          return false;
+        }
+        
+        pairs.set(pair.intValue());
+      }
+    }
+    
+    changedBonds.clear();
+    
+    return true;
+  }
+  
+  private void addChangedAtoms(BitSet atoms)
+  {
+    for (int i = 0; i < changedAtoms.size(); i++)
+    {
+      int atom = graph.getAtomIndex(changedAtoms.get(i));
+      
+      if (atom >= 0)
+      {
+        graph.update(atom);
+        atoms.set(atom);
+      }
+    }
+    
+    changedAtoms.clear();
+  }
+  
+  private boolean isSameBond(int pair, IBond bond)
+  {
+    return bond == graph.getBond(pair) && bond.getAtom(0) == graph.getAtom(graph.getSource(pair)) &&
+      bond.getAtom(1) == graph.getAtom(graph.getTarget(pair));
+  }
+  
+  /**
+   * Measures again the bonds of <code>atoms</code>. Returns <code>false</code> if the
+   * average bond length no longer matches the one the layout was made with.
+   */
+  private boolean updateBondLengths(BitSet atoms)
+  {
+    for (int atom = atoms.nextSetBit(0); atom >= 0; atom = atoms.nextSetBit(atom + 1))
+    {
+      for (int i = 0; i < graph.getDegree(atom); i++)
+      {
+        int pair = graph.getNeighborBond(atom, i);
+        
+        bondLengthSum -= bondLengths[pair];
+        bondLengths[pair] = getLength(pair);
+        bondLengthSum += bondLengths[pair];
+      }
+    }
+    
+    double average = bondLengthSum / graph.getBondCount();
+    
+    return Math.abs(average - atomPairLength) <= LENGTH_TOLERANCE * atomPairLength;
+  }
+  
+  /**
+   * Lays out again <code>atoms</code>, <code>pairs</code>, and the bonds of
+   * <code>atoms</code> and of their neighbors, then the perimeter if any of the old or
+   * new shapes reaches its edge.
+   */
+  private void layout(BitSet atoms, BitSet pairs)
+  {
+    BitSet affected = (BitSet) pairs.clone();
+    boolean interior = true;
+    
+    for (int atom = atoms.nextSetBit(0); atom >= 0; atom = atoms.nextSetBit(atom + 1))
+    {
+      addBonds(atom, affected);
+      
+      for (int i = 0; i < graph.getDegree(atom); i++)
+      {
+        addBonds(graph.getNeighbor(atom, i), affected);
+      }
+      
+      interior &= isInterior(atomBounds[atom]);
+      createAtomShape(atom);
+      interior &= isInterior(atomBounds[atom]);
+    }
+    
+    for (int pair = affected.nextSetBit(0); pair >= 0; pair = affected.nextSetBit(pair + 1))
+    {
+      interior &= isInterior(pair);
+      createAtomPairShape(pair);
+      interior &= isInterior(pair);
+    }
+    
+    if (!interior)
+    {
+      this.perimeter = createPerimeter();
+    }
+  }
+  
+  private void addBonds(int atom, BitSet result)
+  {
+    for (int i = 0; i < graph.getDegree(atom); i++)
+    {
+      result.set(graph.getNeighborBond(atom, i));
+    }
+  }
+  
+  /**
+   * Returns <code>true</code> if <code>bounds</code> is <code>null</code> or lies
+   * strictly inside the extent of the structure, so that it does not determine it.
+   * The extent is kept as the exact extreme coordinates of the shapes, which the
+   * bounds of a <code>Rectangle2D</code> may miss by rounding.
+   */
+  private boolean isInterior(Rectangle2D bounds)
+  {
+    return bounds == null || (isInterior(bounds.getMinX(), bounds.getMinY()) &&
+      isInterior(bounds.getMaxX(), bounds.getMaxY()));
+  }
+  
+  private boolean isInterior(int pair)
+  {
+    for (int i = 4 * MAXIMUM_LINES * pair; i < 4 * (MAXIMUM_LINES * pair + lineCounts[pair]); i += 2)
+    {
+      if (!isInterior(segments[i], segments[i + 1]))
+      {
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  private boolean isInterior(double x, double y)
+  {
+    return extent != null && x > extent[0] && y > extent[1] && x < extent[2] && y < extent[3];
+  }
+  
+  private static Object resize(Object array, int length)
+  {
+    Object result = Array.newInstance(array.getClass().getComponentType(), length);
+    
+    System.arraycopy(array, 0, result, 0, Math.min(length, Array.getLength(array)));
+    
+    return result;
+  }
+  
+  private RenderPlan createRenderPlan()
+  {
+    int segmentCount = 0;
+    int axisCount = 0;
+    int labelCount = 0;
+    
+    for (int i = 0; i < lineCounts.length; i++)
+    {
+      segmentCount += lineCounts[i];
+      
+      if (lineCounts[i] > 0)
+      {
+        axisCount++;
+      }
+    }
+    
+    for (int i = 0; i < atomLabels.length; i++)
+    {
+      if (atomLabels[i] != null)
+      {
+        labelCount++;
+      }
+    }
+    
+    double[] atomPairSegments = new double[4 * segmentCount];
+    double[] atomPairAxes = levelOfDetail ? new double[4 * axisCount] : null;
+    LabelCache.Label[] labels = new LabelCache.Label[labelCount];
+    Color[] colors = new Color[labelCount];
+    double[] planLabelX = new double[labelCount];
+    double[] planLabelY = new double[labelCount];
+    double[] planLabelScale = new double[labelCount];
+    int offset = 0;
+    int axis = 0;
+    int label = 0;
+    
+    for (int i = 0; i < lineCounts.length; i++)
+    {
+      System.arraycopy(segments, 4 * MAXIMUM_LINES * i, atomPairSegments, offset, 4 * lineCounts[i]);
+      offset += 4 * lineCounts[i];
+      
+      if (atomPairAxes != null && lineCounts[i] > 0)
+      {
+        setAxis(atomPairAxes, 4 * axis++, i);
+      }
+    }
+    
+    for (int i = 0; i < atomLabels.length; i++)
+    {
+      if (atomLabels[i] != null)
+      {
+        labels[label] = atomLabels[i];
+        colors[label] = atomColors[i];
+        planLabelX[label] = labelX[i];
+        planLabelY[label] = labelY[i];
+        planLabelScale[label] = labelScale[i];
+        label++;
+      }
+    }
+    
+    return new RenderPlan(atomPairSegments, atomPairAxes, labels, colors, planLabelX, planLabelY, planLabelScale,
+      perimeter, atomPairLength, lineThickness, antialiasing, batchStroking);
+  }
+  
+  private void createAtomShapes()
+  {
+    for (int i = 0; i < graph.getAtomCount(); i++)
+    {
+      createAtomShape(i);
+    }
+  }
+  
+  private void createAtomShape(int atom)
+  {
+    if ("C".equals(graph.getAtom(atom).getSymbol()))
+    {
+      atomBounds[atom] = null;
+      atomLabels[atom] = null;
+      atomColors[atom] = null;
+      
+      return;
+    }
+    
+    Rectangle2D constraint = createBounds(atom);
+    LabelCache.Label label = labelCache.getLabel(graph.getAtom(atom).getSymbol());
+    Rectangle2D glyphBounds = label.getBounds();
+    double scale = 0.7 * (constraint.getHeight() / glyphBounds.getHeight());
+    
+    atomBounds[atom] = constraint;
+    atomLabels[atom] = label;
+    atomColors[atom] = colorScheme.getColor(graph.getAtom(atom));
+    labelX[atom] = getX(atom) - 0.57 * scale * glyphBounds.getWidth(); // 0.57 needed to center!
+    labelY[atom] = getY(atom) + 0.5 * scale * glyphBounds.getHeight();
+    labelScale[atom] = scale;
+  }
+  
+  private Rectangle2D createBounds(int atom)
+  {
+    double radius = atomPairLength * atomHeight;
+    double x = getX(atom) - 0.5 * radius;
+    double y = getY(atom) - 0.5 * radius;
+    
+    return new Rectangle2D.Double(x, y, radius, radius);
+  }
+  
+  private void createAtomPairShapes()
+  {
+    for (int i = 0; i < graph.getBondCount(); i++)
+    {
+      createAtomPairShape(i);
+    }
+  }
+  
+  private void createAtomPairShape(int pair)
+  {
+    IBond.Order order = graph.getBond(pair).getOrder();
+    
+    lineCounts[pair] = 0;
+    
+    if (order == IBond.Order.valueOf("SINGLE"))
+    {
+      addSingleBond(pair);
+    }
+    
+    else if (order == IBond.Order.valueOf("DOUBLE"))
+    {
+      addDoubleBond(pair);
+    }
+    
+    else if (order == IBond.Order.valueOf("TRIPLE"))
+    {
+      addTripleBond(pair);
+    }
+    
+    else if (order == IBond.Order.valueOf("QUADRUPLE"))
+    {
+      addQuadrupleBond(pair);
+    }
+  }
+  
+  private void addSingleBond(int pair)
+  {
+    addLine(pair);
+  }
+  
+  private void addDoubleBond(int pair)
+  {
+    int source = graph.getDegree(graph.getSource(pair)) - 1;
+    int target = graph.getDegree(graph.getTarget(pair)) - 1;
+    if ((source == 1 && target == 0) || (source == 0 && target == 1))
+    {
+      addTerminalDoubleBond(pair);
+    }
+    
+    else if (source == 0 ||  target == 0)
+    {
+      add11DisubstitutedDoubleBond(pair);
+    }
+    
+    else if (source == 1 && target == 1)
+    {
+      add12DisubstitutedDoubleBond(pair);
+    }
+    
+    else if ((source == 2 && target == 1) || (source == 1 && target == 2))
+    {
+      addTriSubstitutedDoubleBond(pair);
+    }
+    
+    else if (source == 2 && target == 2)
+    {
+      addTetrasubstitutedBond(pair);
+    }
+    
+    else
+    {
+      addTerminalDoubleBond(pair);
+    }
+  }
+  
+  private void addTerminalDoubleBond(int pair)
+  {
+    addLine(pair);
+    
+    int line2 = addLine(pair);
+    double translation = 0.5 * atomPairLength * lineSpacing;
+
+    GeometryKit.translate(segments, line2, -2 * translation);
+    GeometryKit.shortenToCenter(segments, line2, 0.25);
+  }
+  
+  private int getSourceSubstituent(int pair)
+  {
+    return getSubstituent(graph.getSource(pair), graph.getTarget(pair));
+  }
+  
+  private int getTargetSubstituent(int pair)
+  {
+    return getSubstituent(graph.getTarget(pair), graph.getSource(pair));
+  }
+  
+  private int getSubstituent(int atom, int partner)
+  {
+    for (int i = 0; i < graph.getDegree(atom); i++)
+    {
+      if (graph.getNeighbor(atom, i) != partner)
+      {
+        return graph.getNeighbor(atom, i);
+      }
+    }
+    
+    return -1;
+  }
+
+  
+  private void add12DisubstitutedDoubleBond(int pair)
+  {
+    int line1 = addLine(pair);
+    int line2 = addLine(pair);
+    double translation = 0.5 * atomPairLength * lineSpacing;
+    double sourceX = getX(getSourceSubstituent(pair));
+    double sourceY = getY(getSourceSubstituent(pair));
+    double targetX = getX(getTargetSubstituent(pair));
+    double targetY = getY(getTargetSubstituent(pair));
+    
+    boolean sourceAbove = GeometryKit.pointAbove(segments, line1, sourceX, sourceY);
+    boolean targetAbove = GeometryKit.pointAbove(segments, line1, targetX, targetY);
+    
+    if (sourceAbove && targetAbove)
+    {
+      translation = -translation;
+    }
+    
+    GeometryKit.translate(segments, line2, -2 * translation);
+    GeometryKit.shortenToCenter(segments, line2, 0.25);
+  }
+  
+  private void add11DisubstitutedDoubleBond(int pair)
+  {
+    int line1 = addLine(pair);
+    int line2 = addLine(pair);
+    double translation = 0.5 * atomPairLength * lineSpacing;
+
+    GeometryKit.translate(segments, line1, translation);
+    GeometryKit.translate(segments, line2, -translation);
+  }
+  
+  private void addTriSubstitutedDoubleBond(int pair)
+  {
+    int line1 = addLine(pair);
+    int line2 = addLine(pair);
+    double translation = 0.5 * atomPairLength * lineSpacing;
+    
+    double x = 0;
+    double y = 0;
+    
+    if (graph.getDegree(graph.getSource(pair)) == 2)
+    {
+      x = getX(getSourceSubstituent(pair));
+      y = getY(getSourceSubstituent(pair));
+    }
+    
+    else
+    {
+      x = getX(getTargetSubstituent(pair));
+      y = getY(getTargetSubstituent(pair));
+    }
+    
+    boolean above = GeometryKit.pointAbove(segments, line1, x, y);
+    
+    if (above)
+    {
+      translation = -translation;
+    }
+
+    GeometryKit.translate(segments, line2, -2 * translation);
+    GeometryKit.shortenToCenter(segments, line2, 0.25);
+  }
+  
+  private void addTetrasubstitutedBond(int pair)
+  {
+    RingIndex rings = getRingIndex();
+    
+    if (rings.getRingCount() == 0 || !rings.isRingBond(graph.getBond(pair)))
+    {
+      add11DisubstitutedDoubleBond(pair);
+      
+      return;
+    }
+
+    addRingTetrasubstitutedBond(pair);
+  }
+  
+  private void addRingTetrasubstitutedBond(int pair)
+  {
+    int anchor = getTetrasubRingBondAnchor(pair);
+    
+    if (anchor < 0)
+    {
+      add11DisubstitutedDoubleBond(pair);
+      
+      return;
+    }
+    
+    int line1 = addLine(pair);
+    int line2 = addLine(pair);
+    double translation = 0.5 * atomPairLength * lineSpacing;
+    
+    if (GeometryKit.pointAbove(segments, line1, getX(anchor), getY(anchor)))
+    {
+      translation = -translation;
+    }
+    
+    GeometryKit.translate(segments, line2, -2 * translation);
+    GeometryKit.shortenToCenter(segments, line2, 0.25);
+  }
+  
+  private int getTetrasubRingBondAnchor(int bond)
+  {   
+    Set<IAtom> ringBondSubstituents = createRingSubstituentSet(bond);
+    
+    if (ringBondSubstituents.size() == 2)
+    {
+      return graph.getAtomIndex((IAtom) ringBondSubstituents.toArray()[0]);
+    }
+    
+    if (ringBondSubstituents.size() == 3)
+    {
+      int source = graph.getSource(bond);
+      int target = graph.getTarget(bond);
+      List<IAtom> connected = new ArrayList<IAtom>();
+      
+      addNeighbors(source, connected);
+      addNeighbors(target, connected);
+      connected.remove(graph.getAtom(target));
+      connected.remove(graph.getAtom(source));
+      connected.removeAll(ringBondSubstituents);
+      
+      // no single substituent off the ring: leave the bond to the caller's fallback
+      if (connected.size() != 1)
+      {
+        return -1;
+      }
+      
+      int sourceTarget = -1;
+      
+      if (connected.get(0) == graph.getAtom(source))
+      {
+        sourceTarget = source;
+      }
+      
+      else
+      {
+        sourceTarget = target;
+      }
+      
+      Iterator it = ringBondSubstituents.iterator();
+      
+      while (it.hasNext())
+      {
+        IAtom atom = (IAtom) it.next();
+        
+        if (!graph.isBonded(graph.getAtomIndex(atom), sourceTarget))
+        {
+          return graph.getAtomIndex(atom);
+        }
+      }
+    }
+    
+    if (ringBondSubstituents.size() == 4)
+    {
+      detectAromaticity();
+      
+      Iterator it = ringBondSubstituents.iterator();
+      
+      while (it.hasNext())
+      {
+        IAtom atom = (IAtom) it.next();
+        
+        if (getRingIndex().isInRingOfSize(atom, 6) && isAromatic(atom))
+        {
+          return graph.getAtomIndex(atom);
+        }
+      }
+    }
+
+    return -1;
+  }
+  
+  private void addNeighbors(int atom, List<IAtom> result)
+  {
+    for (int i = 0; i < graph.getDegree(atom); i++)
+    {
+      result.add(graph.getAtom(graph.getNeighbor(atom, i)));
+    }
+  }
+  
+  private void detectAromaticity()
+  {
+    if (aromaticityDetected)
+    {
+      return;
+    }
+    
+    if (!isAromaticityPerceived())
+    {
+      boolean[] aromatic = new boolean[graph.getAtomCount()];
+      
+      for (int i = 0; i < aromatic.length; i++)
+      {
+        aromatic[i] = getRingIndex().isAromatic(graph.getAtom(i));
+      }
+      
+      try
+      {
+        getRingIndex().perceiveAromaticity(structure);
+      }
+      
+      catch (CDKException e)
+      {
+        throw new RuntimeException(e);
+      }
+      
+      catch (CloneNotSupportedException e)
+      {
+        throw new RuntimeException(e);
+      }
+      
+      // shapes laid out before perception may depend on the flags it changed
+      for (int i = 0; i < aromatic.length; i++)
+      {
+        if (getRingIndex().isAromatic(graph.getAtom(i)) != aromatic[i])
+        {
+          changedAtoms.add(graph.getAtom(i));
+        }
+      }
+    }
+    
+    aromaticityDetected = true;
+  }
+  
+  /**
+   * Returns <code>true</code> if <code>atom</code> is aromatic: as flagged, for a
+   * structure marked {@link DefaultGraphicsPainter#AROMATICITY_PERCEIVED}, and as
+   * perceived by the ring index otherwise, since perception leaves the flags of the
+   * structure alone.
+   */
+  private boolean isAromatic(IAtom atom)
+  {
+    if (isAromaticityPerceived())
+    {
+      return atom.getFlag(CDKConstants.ISAROMATIC);
+    }
+    
+    return getRingIndex().isAromatic(atom);
+  }
+  
+  private boolean isAromaticityPerceived()
+  {
+    return Boolean.TRUE.equals(structure.getProperty(DefaultGraphicsPainter.AROMATICITY_PERCEIVED));
+  }
+  
+  /**
+   * Returns the ring index of the structure, computing it on first use. After a
+   * layout, it may be handed to a later builder of the same structure with
+   * {@link #setRingIndex(RingIndex)}.
+   * 
+   * @return the ring index, or <code>null</code> if the layout did not need one
+   */
+  RingIndex getComputedRingIndex()
+  {
+    return ringIndex;
+  }
+  
+  /**
+   * Sets a ring index computed earlier for the structure of this builder. It is used
+   * only if it still describes the structure when laying out starts.
+   * 
+   * @param ringIndex the ring index, or <code>null</code>
+   */
+  void setRingIndex(RingIndex ringIndex)
+  {
+    this.ringIndex = ringIndex;
+  }
+  
+  private RingIndex getRingIndex()
+  {
+    if (ringIndex == null)
+    {
+      ringIndex = new RingIndex(structure);
+    }
+    
+    return ringIndex;
+  }
+  
+  private Set<IAtom> createRingSubstituentSet(int bond)
+  {
+    // kept in neighbor order, so the anchor chosen depends on the structure alone
+    Set<IAtom> ringSubs = new LinkedHashSet<IAtom>();
+    IAtom source = graph.getAtom(graph.getSource(bond));
+    IAtom target = graph.getAtom(graph.getTarget(bond));
+    
+    getRingIndex().addRingNeighbors(source, ringSubs);
+    getRingIndex().addRingNeighbors(target, ringSubs);
+    
+    ringSubs.remove(target);
+    ringSubs.remove(source);
+    
+    return ringSubs;
+  }
+  
+  private void addTripleBond(int pair)
+  {
+    int line1 = addLine(pair);
+    
+    addLine(pair);
+    
+    int line3 = addLine(pair);
+
+    double translation = atomPairLength * lineSpacing;
+
+    GeometryKit.translate(segments, line1, translation);
+    GeometryKit.translate(segments, line3, -translation);
+  }
+  
+  private void addQuadrupleBond(int pair) {
+    // TODO how should quadruple bonds be represented?
+    addTripleBond(pair);
+  }
+  
+  /**
+   * Adds a line to <code>pair</code>, the segment between its atoms trimmed to their
+   * label bounds, and returns its offset in <code>segments</code>. Each bond has room
+   * for three lines.
+   */
+  private int addLine(int pair)
+  {
+    int offset = 4 * (MAXIMUM_LINES * pair + lineCounts[pair]);
+    
+    setAxis(segments, offset, pair);
+    lineCounts[pair]++;
+    
+    return offset;
+  }
+  
+  /**
+   * Writes the segment between the atoms of <code>pair</code>, trimmed to their label
+   * bounds, to <code>result</code> at <code>offset</code>.
+   */
+  private void setAxis(double[] result, int offset, int pair)
+  {
+    int source = graph.getSource(pair);
+    int target = graph.getTarget(pair);
+    
+    result[offset] = getX(source);
+    result[offset + 1] = getY(source);
+    result[offset + 2] = getX(target);
+    result[offset + 3] = getY(target);
+      
+    if (atomBounds[source] != null)
+    {
+      GeometryKit.trimLine(result, offset, atomBounds[source]);
+    }
+    
+    if (atomBounds[target] != null)
+    {
+      GeometryKit.trimLine(result, offset, atomBounds[target]);
+    }
+  }
+  
+  private Rectangle2D createPerimeter()
+  {
+    Rectangle2D result = null;
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    
+    for (int pair = 0; pair < lineCounts.length; pair++)
+    {
+      for (int i = 4 * MAXIMUM_LINES * pair; i < 4 * (MAXIMUM_LINES * pair + lineCounts[pair]); i += 2)
+      {
+        minX = Math.min(minX, segments[i]);
+        minY = Math.min(minY, segments[i + 1]);
+        maxX = Math.max(maxX, segments[i]);
+        maxY = Math.max(maxY, segments[i + 1]);
+      }
+    }
+    
+    if (minX <= maxX)
+    {
+      result = new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
+    
+    for (int i = 0; i < atomBounds.length; i++)
+    {
+      result = union(result, atomBounds[i]);
+      
+      if (atomBounds[i] != null)
+      {
+        minX = Math.min(minX, atomBounds[i].getMinX());
+        minY = Math.min(minY, atomBounds[i].getMinY());
+        maxX = Math.max(maxX, atomBounds[i].getMaxX());
+        maxY = Math.max(maxY, atomBounds[i].getMaxY());
+      }
+    }
+    
+    this.extent = result == null ? null : new double[] { minX, minY, maxX, maxY };
+    
+    if (result == null)
+    {
+      return new Rectangle2D.Double();
+    }
+    
+    double correction = 0.5 * lineThickness * atomPairLength;
+    //TODO only apply correction on boundary not intersecting atom label
+    
+    result.setRect(result.getX() - correction, result.getY() - correction, result.getWidth() + 2 * correction, result.getHeight() + 2 * correction);
+
+    return result;      
+  }
+  
+  private Rectangle2D union(Rectangle2D bounds, Rectangle2D other)
+  {
+    if (other == null)
+    {
+      return bounds;
+    }
+    
+    if (bounds == null)
+    {
+      return other.getBounds2D();
+    }
+    
+    Rectangle2D.union(bounds, other, bounds);
+    
+    return bounds;
+  }
+  
+  private double getAverageAtomDistance()
+  {
+    double sum = 0;
+    
+    for (int i = 0; i < graph.getBondCount(); i++)
+    {
+      bondLengths[i] = getLength(i);
+      sum += bondLengths[i];
+    }
+    
+    this.bondLengthSum = sum;
+
+    return sum / graph.getBondCount();
+  }
+  
+  private double getLength(int pair)
+  {
+    int source = graph.getSource(pair);
+    int target = graph.getTarget(pair);
+    
+    return GeometryKit.getDistance(getX(source), getY(source), getX(target), getY(target));
+  }
+}
@@ -0,0 +1,323 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.aromaticity.CDKHueckelAromaticityDetector;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IRingSet;
+import org.openscience.cdk.ringsearch.SSSRFinder;
+
+/**
+ * <p>
+ * The ring membership of the atoms and bonds of a structure, computed once from its
+ * smallest set of smallest rings. Whether a bond is in a ring, which ring neighbors
+ * an atom has and the ring sizes an atom belongs to are answered without scanning
+ * the ring set.
+ * </p>
+ *
+ * <p>
+ * An index is held by the builders laying out its structure, not by any global
+ * table, so it becomes unreachable together with the structure and its painters.
+ * {@link #isIndexOf(IAtomContainer)} tells whether it may be reused for a later
+ * layout. Ring data never changes after construction, and aromaticity perception is
+ * serialized, so a <code>RingIndex</code> may be used by any number of threads.
+ * Aromaticity is perceived on a copy of the structure and the flags are kept by the
+ * index, so perception never modifies the structure itself.
+ * </p>
+ */
+final class RingIndex
+{
+  private IAtom[] atoms;
+  private IBond[] bonds;
+  private IAtom[] sources;
+  private IAtom[] targets;
+  private Map<IAtom, Integer> atomIndices;
+  private Map<IBond, Integer> bondIndices;
+  private BitSet ringBonds;
+  private List<List<IAtom>> ringNeighbors;
+  private List<List<Integer>> ringSizes;
+  private int ringCount;
+  private IBond.Order[] aromaticOrders;
+  private BitSet aromaticAtoms;
+  private int perceptionCount;
+
+  /**
+   * Computes the <code>RingIndex</code> of <code>structure</code>.
+   *
+   * @param structure the structure to index
+   */
+  RingIndex(IAtomContainer structure)
+  {
+    this.atoms = new IAtom[structure.getAtomCount()];
+    this.bonds = new IBond[structure.getBondCount()];
+    this.sources = new IAtom[bonds.length];
+    this.targets = new IAtom[bonds.length];
+    this.atomIndices = new HashMap<IAtom, Integer>();
+    this.bondIndices = new HashMap<IBond, Integer>();
+    this.ringBonds = new BitSet(bonds.length);
+    this.ringNeighbors = new ArrayList<List<IAtom>>(atoms.length);
+    this.ringSizes = new ArrayList<List<Integer>>(atoms.length);
+    this.aromaticOrders = null;
+    this.aromaticAtoms = null;
+    this.perceptionCount = 0;
+
+    for (int i = 0; i < atoms.length; i++)
+    {
+      atoms[i] = structure.getAtom(i);
+      atomIndices.put(atoms[i], Integer.valueOf(i));
+      ringNeighbors.add(new ArrayList<IAtom>(3));
+      ringSizes.add(new ArrayList<Integer>(2));
+    }
+
+    for (int i = 0; i < bonds.length; i++)
+    {
+      bonds[i] = structure.getBond(i);
+      sources[i] = bonds[i].getAtom(0);
+      targets[i] = bonds[i].getAtom(1);
+      bondIndices.put(bonds[i], Integer.valueOf(i));
+    }
+
+    IRingSet sssr = new SSSRFinder(structure).findSSSR();
+
+    this.ringCount = sssr.getAtomContainerCount();
+
+    for (int i = 0; i < ringCount; i++)
+    {
+      indexRing(sssr.getAtomContainer(i));
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if this index describes <code>structure</code> as it is
+   * now: the same atoms and the same bonds between them, in the same order.
+   *
+   * @param structure the structure to check
+   * @return <code>true</code> if this index is up to date for <code>structure</code>
+   */
+  boolean isIndexOf(IAtomContainer structure)
+  {
+    if (structure.getAtomCount() != atoms.length || structure.getBondCount() != bonds.length)
+    {
+      return false;
+    }
+
+    for (int i = 0; i < atoms.length; i++)
+    {
+      if (structure.getAtom(i) != atoms[i])
+      {
+        return false;
+      }
+    }
+
+    for (int i = 0; i < bonds.length; i++)
+    {
+      IBond bond = structure.getBond(i);
+
+      if (bond != bonds[i] || bond.getAtom(0) != sources[i] || bond.getAtom(1) != targets[i])
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the number of rings in the smallest set of smallest rings.
+   *
+   * @return the number of rings
+   */
+  int getRingCount()
+  {
+    return ringCount;
+  }
+
+  /**
+   * Returns <code>true</code> if <code>bond</code> belongs to a ring.
+   *
+   * @param bond a bond of the indexed structure
+   * @return <code>true</code> if <code>bond</code> is a ring bond
+   */
+  boolean isRingBond(IBond bond)
+  {
+    Integer index = bondIndices.get(bond);
+
+    return index != null && ringBonds.get(index.intValue());
+  }
+
+  /**
+   * Adds to <code>result</code> every atom joined to <code>atom</code> by a ring bond.
+   *
+   * @param atom an atom of the indexed structure
+   * @param result the set receiving the ring neighbors
+   */
+  void addRingNeighbors(IAtom atom, Set<IAtom> result)
+  {
+    Integer index = atomIndices.get(atom);
+
+    if (index != null)
+    {
+      result.addAll(ringNeighbors.get(index.intValue()));
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if <code>atom</code> belongs to a ring of
+   * <code>size</code> atoms.
+   *
+   * @param atom an atom of the indexed structure
+   * @param size the ring size
+   * @return <code>true</code> if <code>atom</code> is in a ring of that size
+   */
+  boolean isInRingOfSize(IAtom atom, int size)
+  {
+    Integer index = atomIndices.get(atom);
+
+    return index != null && ringSizes.get(index.intValue()).contains(Integer.valueOf(size));
+  }
+
+  /**
+   * Perceives the aromaticity of <code>structure</code> by Hueckel perception on a
+   * copy of it, unless it was already perceived by this index and no bond order has
+   * changed since. The structure itself is left unchanged; the result is reported by
+   * {@link #isAromatic(IAtom)}.
+   *
+   * @param structure the indexed structure
+   * @throws CDKException if perception fails; it is tried again on the next call
+   * @throws CloneNotSupportedException if the structure cannot be copied
+   */
+  synchronized void perceiveAromaticity(IAtomContainer structure) throws CDKException,
+    CloneNotSupportedException
+  {
+    if (aromaticOrders != null && !isBondOrderChanged())
+    {
+      return;
+    }
+
+    IAtomContainer copy = (IAtomContainer) structure.clone();
+
+    CDKHueckelAromaticityDetector.detectAromaticity(copy);
+
+    perceptionCount++;
+    aromaticOrders = new IBond.Order[bonds.length];
+    aromaticAtoms = new BitSet(atoms.length);
+
+    for (int i = 0; i < bonds.length; i++)
+    {
+      aromaticOrders[i] = bonds[i].getOrder();
+    }
+
+    // the copy lists its atoms in the order of the structure
+    for (int i = 0; i < atoms.length; i++)
+    {
+      aromaticAtoms.set(i, copy.getAtom(i).getFlag(CDKConstants.ISAROMATIC));
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if the last perception found <code>atom</code> aromatic.
+   *
+   * @param atom an atom of the indexed structure
+   * @return <code>true</code> if <code>atom</code> was perceived as aromatic
+   */
+  synchronized boolean isAromatic(IAtom atom)
+  {
+    Integer index = atomIndices.get(atom);
+
+    return aromaticAtoms != null && index != null && aromaticAtoms.get(index.intValue());
+  }
+
+  /**
+   * Returns the number of times this index has perceived aromaticity.
+   *
+   * @return the number of perceptions run
+   */
+  synchronized int getPerceptionCount()
+  {
+    return perceptionCount;
+  }
+
+  private boolean isBondOrderChanged()
+  {
+    for (int i = 0; i < bonds.length; i++)
+    {
+      if (bonds[i].getOrder() != aromaticOrders[i])
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private void indexRing(IAtomContainer ring)
+  {
+    Integer size = Integer.valueOf(ring.getAtomCount());
+
+    for (int i = 0; i < ring.getAtomCount(); i++)
+    {
+      Integer index = atomIndices.get(ring.getAtom(i));
+
+      if (index != null && !ringSizes.get(index.intValue()).contains(size))
+      {
+        ringSizes.get(index.intValue()).add(size);
+      }
+    }
+
+    for (int i = 0; i < ring.getBondCount(); i++)
+    {
+      IBond bond = ring.getBond(i);
+      Integer index = bondIndices.get(bond);
+
+      if (index == null || ringBonds.get(index.intValue()))
+      {
+        continue;
+      }
+
+      ringBonds.set(index.intValue());
+      addRingNeighbor(bond.getAtom(0), bond.getAtom(1));
+      addRingNeighbor(bond.getAtom(1), bond.getAtom(0));
+    }
+  }
+
+  private void addRingNeighbor(IAtom atom, IAtom neighbor)
+  {
+    Integer index = atomIndices.get(atom);
+
+    if (index != null)
+    {
+      ringNeighbors.get(index.intValue()).add(neighbor);
+    }
+  }
+}
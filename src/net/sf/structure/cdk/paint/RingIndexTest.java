@@ -0,0 +1,208 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.io.File;
+import java.io.FileReader;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.vecmath.Point2d;
+
+import junit.framework.TestCase;
+
+import org.openscience.cdk.Atom;
+import org.openscience.cdk.Bond;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IMolecule;
+import org.openscience.cdk.io.MDLReader;
+
+/**
+ * Tests for <code>RingIndex</code> and the aromaticity perception it memoizes.
+ * Kept in the package of the class it tests, which is not public.
+ */
+public class RingIndexTest extends TestCase
+{
+  public void testRingMembership()
+  {
+    IMolecule indane = createMethylindane();
+    RingIndex index = new RingIndex(indane);
+
+    assertEquals(2, index.getRingCount());
+    assertTrue(index.isIndexOf(indane));
+
+    // bond 5 is the fusion bond, in both rings; bond 10 is the methyl bond, in neither
+    assertTrue(index.isRingBond(indane.getBond(0)));
+    assertTrue(index.isRingBond(indane.getBond(5)));
+    assertTrue(index.isRingBond(indane.getBond(7)));
+    assertFalse(index.isRingBond(indane.getBond(10)));
+
+    assertTrue(index.isInRingOfSize(indane.getAtom(0), 6));
+    assertTrue(index.isInRingOfSize(indane.getAtom(0), 5));
+    assertTrue(index.isInRingOfSize(indane.getAtom(2), 6));
+    assertFalse(index.isInRingOfSize(indane.getAtom(2), 5));
+    assertTrue(index.isInRingOfSize(indane.getAtom(7), 5));
+    assertFalse(index.isInRingOfSize(indane.getAtom(7), 6));
+    assertFalse(index.isInRingOfSize(indane.getAtom(9), 6));
+
+    assertEquals(getAtoms(indane, new int[] { 1, 5, 8 }), getRingNeighbors(index, indane.getAtom(0)));
+    assertEquals(getAtoms(indane, new int[] { 1, 3 }), getRingNeighbors(index, indane.getAtom(2)));
+    assertEquals(getAtoms(indane, new int[0]), getRingNeighbors(index, indane.getAtom(9)));
+
+    indane.addBond(new Bond(indane.getAtom(9), indane.getAtom(3), IBond.Order.SINGLE));
+
+    assertFalse(index.isIndexOf(indane));
+  }
+
+  public void testPerceivesAromaticityOncePerBondOrders() throws Exception
+  {
+    IMolecule indane = createMethylindane();
+    RingIndex index = new RingIndex(indane);
+
+    index.perceiveAromaticity(indane);
+    index.perceiveAromaticity(indane);
+
+    assertEquals(1, index.getPerceptionCount());
+
+    // shift the double bonds of the six-membered ring by one position
+    for (int i = 0; i < 6; i++)
+    {
+      IBond bond = indane.getBond(i);
+
+      bond.setOrder(bond.getOrder() == IBond.Order.DOUBLE ? IBond.Order.SINGLE : IBond.Order.DOUBLE);
+    }
+
+    index.perceiveAromaticity(indane);
+    index.perceiveAromaticity(indane);
+
+    assertEquals(2, index.getPerceptionCount());
+  }
+
+  public void testAromaticityPerceivedSkipsPerception() throws Exception
+  {
+    IMolecule indole = readMolecule("indole.mol");
+    RingIndex index = new RingIndex(indole);
+    IAtom atom = indole.getAtom(0);
+
+    // flags of a perceived structure are used as they are, whatever they say
+    indole.setProperty(DefaultGraphicsPainter.AROMATICITY_PERCEIVED, Boolean.TRUE);
+    atom.setFlag(CDKConstants.ISAROMATIC, !atom.getFlag(CDKConstants.ISAROMATIC));
+
+    boolean flag = atom.getFlag(CDKConstants.ISAROMATIC);
+
+    build(indole, index);
+
+    assertEquals(0, index.getPerceptionCount());
+    assertEquals(flag, atom.getFlag(CDKConstants.ISAROMATIC));
+
+    indole.setProperty(DefaultGraphicsPainter.AROMATICITY_PERCEIVED, Boolean.FALSE);
+    build(indole, index);
+
+    assertEquals(1, index.getPerceptionCount());
+
+    // the index outlives the builder, so a later layout does not perceive again
+    build(indole, index);
+
+    assertEquals(1, index.getPerceptionCount());
+  }
+
+  private void build(IMolecule molecule, RingIndex index)
+  {
+    RenderPlanBuilder builder =
+      new RenderPlanBuilder(molecule, new DefaultColorScheme(), 0.50, 0.20, 0.07, true, false, true);
+
+    builder.setRingIndex(index);
+    builder.build();
+
+    assertSame(index, builder.getComputedRingIndex());
+  }
+
+  private Set<IAtom> getRingNeighbors(RingIndex index, IAtom atom)
+  {
+    Set<IAtom> result = new HashSet<IAtom>();
+
+    index.addRingNeighbors(atom, result);
+
+    return result;
+  }
+
+  private Set<IAtom> getAtoms(IMolecule molecule, int[] indices)
+  {
+    Set<IAtom> result = new HashSet<IAtom>();
+
+    for (int i = 0; i < indices.length; i++)
+    {
+      result.add(molecule.getAtom(indices[i]));
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates a methylindane with alternating bonds in its six-membered ring. Atoms 0 to
+   * 5 form the six-membered ring, atoms 0, 5, 6, 7 and 8 the five-membered ring, and
+   * atom 9 is the methyl carbon. Bonds 0 to 5 join the atoms of the six-membered ring
+   * in turn, bonds 6 to 9 close the five-membered ring and bond 10 is the methyl bond.
+   */
+  private IMolecule createMethylindane()
+  {
+    IMolecule result = new Molecule();
+    double[][] points = {
+      { 0, 0.7 }, { -1.2, 1.4 }, { -2.4, 0.7 }, { -2.4, -0.7 }, { -1.2, -1.4 }, { 0, -0.7 },
+      { 1.3, -1.1 }, { 2.1, 0 }, { 1.3, 1.1 }, { -3.6, 1.4 } };
+    int[][] bonds = {
+      { 0, 1, 2 }, { 1, 2, 1 }, { 2, 3, 2 }, { 3, 4, 1 }, { 4, 5, 2 }, { 5, 0, 1 },
+      { 5, 6, 1 }, { 6, 7, 1 }, { 7, 8, 1 }, { 8, 0, 1 }, { 2, 9, 1 } };
+
+    for (int i = 0; i < points.length; i++)
+    {
+      result.addAtom(new Atom("C", new Point2d(points[i][0], points[i][1])));
+    }
+
+    for (int i = 0; i < bonds.length; i++)
+    {
+      result.addBond(new Bond(result.getAtom(bonds[i][0]), result.getAtom(bonds[i][1]),
+        bonds[i][2] == 2 ? IBond.Order.DOUBLE : IBond.Order.SINGLE));
+    }
+
+    return result;
+  }
+
+  private IMolecule readMolecule(String name) throws Exception
+  {
+    FileReader reader = new FileReader(new File(System.getProperty("molfiles", "molfiles"), name));
+
+    try
+    {
+      return (IMolecule) new MDLReader(reader).read(new Molecule());
+    }
+
+    finally
+    {
+      reader.close();
+    }
+  }
+}
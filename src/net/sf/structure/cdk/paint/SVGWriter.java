@@ -0,0 +1,278 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * <p>
+ * Writes a <code>RenderPlan</code> as an SVG document. Bond and label outlines are
+ * transformed into image coordinates and written as compact path data straight to
+ * the output, without building a document tree.
+ * </p>
+ *
+ * <p>
+ * All bonds are written as a single stroked path; each atom label is written as a
+ * filled path in its own color. Coordinates are rounded to a hundredth of a pixel.
+ * Several plans can be written into one document, each fitted to its own rectangle.
+ * </p>
+ */
+public final class SVGWriter
+{
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private Writer out;
+  private double[] coords;
+
+  /**
+   * Constructs an <code>SVGWriter</code> that writes to <code>out</code>.
+   *
+   * @param out the destination of the SVG document
+   */
+  public SVGWriter(Writer out)
+  {
+    this.out = out;
+    this.coords = new double[6];
+  }
+
+  /**
+   * Writes <code>plan</code> as a UTF-8 encoded SVG document of dimensions
+   * <code>width</code> and <code>height</code> to <code>out</code>. The stream is
+   * flushed but not closed.
+   *
+   * @param plan the RenderPlan to be written
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param out the destination of the SVG document
+   * @throws IOException if the document cannot be written
+   */
+  public static void write(RenderPlan plan, int width, int height, OutputStream out) throws IOException
+  {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+
+    new SVGWriter(writer).write(plan, width, height);
+    writer.flush();
+  }
+
+  /**
+   * Writes <code>plan</code> as an SVG document of dimensions <code>width</code> and
+   * <code>height</code>. The underlying <code>Writer</code> is neither flushed nor closed.
+   *
+   * @param plan the RenderPlan to be written
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @throws IOException if the document cannot be written
+   */
+  public void write(RenderPlan plan, int width, int height) throws IOException
+  {
+    write(new RenderPlan[] { plan }, new Rectangle2D[] { new Rectangle(width, height) }, width, height);
+  }
+
+  /**
+   * Writes an SVG document of dimensions <code>width</code> and <code>height</code> in
+   * which each of <code>plans</code> is scaled and centered to fit the rectangle at the
+   * same index of <code>bounds</code>. Edges are crisp if none of the plans is
+   * antialiased. The underlying <code>Writer</code> is neither flushed nor closed.
+   *
+   * @param plans the RenderPlans to be written
+   * @param bounds the rectangle, in pixels, for each plan
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @throws IOException if the document cannot be written
+   */
+  public void write(RenderPlan[] plans, Rectangle2D[] bounds, int width, int height) throws IOException
+  {
+    boolean antialiased = false;
+
+    for (int i = 0; i < plans.length; i++)
+    {
+      antialiased |= plans[i].isAntialiased();
+    }
+
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+    out.write(Integer.toString(width));
+    out.write("\" height=\"");
+    out.write(Integer.toString(height));
+    out.write("\" viewBox=\"0 0 ");
+    out.write(Integer.toString(width));
+    out.write(' ');
+    out.write(Integer.toString(height));
+    out.write('"');
+
+    if (!antialiased)
+    {
+      out.write(" shape-rendering=\"crispEdges\"");
+    }
+
+    out.write(">\n");
+
+    for (int i = 0; i < plans.length; i++)
+    {
+      AffineTransform transform = AffineTransform.getTranslateInstance(bounds[i].getX(), bounds[i].getY());
+
+      transform.concatenate(plans[i].createTransform(bounds[i]));
+      writeAtomPairs(plans[i], transform);
+      writeLabels(plans[i], transform);
+    }
+
+    out.write("</svg>\n");
+  }
+
+  private void writeAtomPairs(RenderPlan plan, AffineTransform transform) throws IOException
+  {
+    if (plan.getSegmentCount() == 0)
+    {
+      return;
+    }
+
+    out.write("<path fill=\"none\" stroke=\"#000000\" stroke-linecap=\"round\" stroke-linejoin=\"round\" stroke-width=\"");
+    writeNumber(plan.getLineWidth() * transform.getScaleX());
+    out.write("\" d=\"");
+
+    double[] segments = plan.getSegments();
+
+    for (int i = 0; i < segments.length; i += 4)
+    {
+      transform.transform(segments, i, coords, 0, 2);
+      writeSegment('M', 1, 0);
+      writeSegment('L', 1, 2);
+    }
+
+    out.write("\"/>\n");
+  }
+
+  private void writeLabels(RenderPlan plan, AffineTransform transform) throws IOException
+  {
+    for (int i = 0; i < plan.getLabelCount(); i++)
+    {
+      AffineTransform labelTransform = new AffineTransform(transform);
+
+      labelTransform.concatenate(plan.getLabelTransform(i));
+
+      out.write("<path fill=\"");
+      writeColor(plan.getLabelColor(i));
+      out.write("\" d=\"");
+      writePath(plan.getLabelOutline(i).getPathIterator(labelTransform));
+      out.write("\"/>\n");
+    }
+  }
+
+  private void writePath(PathIterator it) throws IOException
+  {
+    while (!it.isDone())
+    {
+      int type = it.currentSegment(coords);
+
+      switch (type)
+      {
+        case PathIterator.SEG_MOVETO:
+          writeSegment('M', 1, 0);
+          break;
+
+        case PathIterator.SEG_LINETO:
+          writeSegment('L', 1, 0);
+          break;
+
+        case PathIterator.SEG_QUADTO:
+          writeSegment('Q', 2, 0);
+          break;
+
+        case PathIterator.SEG_CUBICTO:
+          writeSegment('C', 3, 0);
+          break;
+
+        case PathIterator.SEG_CLOSE:
+          out.write('Z');
+          break;
+      }
+
+      it.next();
+    }
+  }
+
+  private void writeSegment(char command, int pointCount, int offset) throws IOException
+  {
+    out.write(command);
+
+    for (int i = 0; i < 2 * pointCount; i++)
+    {
+      if (i > 0)
+      {
+        out.write(' ');
+      }
+
+      writeNumber(coords[offset + i]);
+    }
+  }
+
+  /**
+   * Writes <code>value</code> rounded to two decimal places, without trailing zeros.
+   */
+  private void writeNumber(double value) throws IOException
+  {
+    long hundredths = Math.round(value * 100);
+
+    if (hundredths < 0)
+    {
+      out.write('-');
+      hundredths = -hundredths;
+    }
+
+    out.write(Long.toString(hundredths / 100));
+
+    int fraction = (int) (hundredths % 100);
+
+    if (fraction != 0)
+    {
+      out.write('.');
+      out.write((char) ('0' + fraction / 10));
+
+      if (fraction % 10 != 0)
+      {
+        out.write((char) ('0' + fraction % 10));
+      }
+    }
+  }
+
+  private void writeColor(Color color) throws IOException
+  {
+    int rgb = color.getRGB();
+
+    out.write('#');
+
+    for (int shift = 20; shift >= 0; shift -= 4)
+    {
+      out.write(HEX[(rgb >> shift) & 0xf]);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.awt.geom.Rectangle2D;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * A uniform grid over the bounding boxes of a set of items, answering which items
+ * intersect a rectangle in time proportional to the number of grid cells and items
+ * near the rectangle rather than to the number of items.
+ * </p>
+ *
+ * <p>
+ * Items are numbered by their position in the array of boxes the index is built
+ * from. Each cell lists, in compressed form, every item whose box overlaps it. An
+ * index never changes after construction and may be queried by any number of
+ * threads at once.
+ * </p>
+ */
+final class SpatialIndex
+{
+  private static final int MAXIMUM_DIVISIONS = 1024;
+
+  private double[] boxes;
+  private double minX;
+  private double minY;
+  private double maxX;
+  private double maxY;
+  private double cellSize;
+  private int columns;
+  private int rows;
+  private int[] cellOffsets;
+  private int[] items;
+
+  /**
+   * Indexes the boxes in <code>boxes</code>, given as four coordinates (minX, minY,
+   * maxX, maxY) per item, in cells of about <code>cellSize</code> on a side. The
+   * array is shared and must not be modified afterwards.
+   *
+   * @param boxes the bounding boxes of the items
+   * @param cellSize the preferred side length of a grid cell
+   */
+  SpatialIndex(double[] boxes, double cellSize)
+  {
+    int count = boxes.length / 4;
+
+    this.boxes = boxes;
+    this.minX = Double.POSITIVE_INFINITY;
+    this.minY = Double.POSITIVE_INFINITY;
+    this.maxX = Double.NEGATIVE_INFINITY;
+    this.maxY = Double.NEGATIVE_INFINITY;
+
+    for (int i = 0; i < boxes.length; i += 4)
+    {
+      minX = Math.min(minX, boxes[i]);
+      minY = Math.min(minY, boxes[i + 1]);
+      maxX = Math.max(maxX, boxes[i + 2]);
+      maxY = Math.max(maxY, boxes[i + 3]);
+    }
+
+    if (count == 0)
+    {
+      minX = 0;
+      minY = 0;
+      maxX = 0;
+      maxY = 0;
+    }
+
+    double extent = Math.max(maxX - minX, maxY - minY);
+
+    if (!(cellSize > 0) || extent / cellSize > MAXIMUM_DIVISIONS)
+    {
+      cellSize = extent > 0 ? extent / MAXIMUM_DIVISIONS : 1;
+    }
+
+    this.cellSize = cellSize;
+    this.columns = (int) ((maxX - minX) / cellSize) + 1;
+    this.rows = (int) ((maxY - minY) / cellSize) + 1;
+    this.cellOffsets = new int[columns * rows + 1];
+
+    for (int i = 0; i < count; i++)
+    {
+      for (int row = getRow(boxes[4 * i + 1]); row <= getRow(boxes[4 * i + 3]); row++)
+      {
+        for (int column = getColumn(boxes[4 * i]); column <= getColumn(boxes[4 * i + 2]); column++)
+        {
+          cellOffsets[row * columns + column + 1]++;
+        }
+      }
+    }
+
+    for (int i = 0; i < columns * rows; i++)
+    {
+      cellOffsets[i + 1] += cellOffsets[i];
+    }
+
+    int[] next = new int[columns * rows];
+
+    System.arraycopy(cellOffsets, 0, next, 0, next.length);
+    this.items = new int[cellOffsets[columns * rows]];
+
+    for (int i = 0; i < count; i++)
+    {
+      for (int row = getRow(boxes[4 * i + 1]); row <= getRow(boxes[4 * i + 3]); row++)
+      {
+        for (int column = getColumn(boxes[4 * i]); column <= getColumn(boxes[4 * i + 2]); column++)
+        {
+          items[next[row * columns + column]++] = i;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if the box of every item lies within <code>region</code>.
+   *
+   * @param region the rectangle to test
+   * @return <code>true</code> if <code>region</code> covers all items
+   */
+  boolean isCoveredBy(Rectangle2D region)
+  {
+    return region.getMinX() <= minX && region.getMinY() <= minY &&
+      region.getMaxX() >= maxX && region.getMaxY() >= maxY;
+  }
+
+  /**
+   * Adds to <code>result</code> every item whose box intersects <code>region</code>.
+   *
+   * @param region the rectangle to search
+   * @param result the set receiving the numbers of the intersecting items
+   */
+  void find(Rectangle2D region, BitSet result)
+  {
+    double left = region.getMinX();
+    double top = region.getMinY();
+    double right = region.getMaxX();
+    double bottom = region.getMaxY();
+
+    for (int row = getRow(top); row <= getRow(bottom); row++)
+    {
+      for (int column = getColumn(left); column <= getColumn(right); column++)
+      {
+        int cell = row * columns + column;
+
+        for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++)
+        {
+          int item = items[i];
+          int offset = 4 * item;
+
+          if (!result.get(item) && boxes[offset] <= right && boxes[offset + 2] >= left &&
+            boxes[offset + 1] <= bottom && boxes[offset + 3] >= top)
+          {
+            result.set(item);
+          }
+        }
+      }
+    }
+  }
+
+  private int getColumn(double x)
+  {
+    return clamp((int) Math.floor((x - minX) / cellSize), columns);
+  }
+
+  private int getRow(double y)
+  {
+    return clamp((int) Math.floor((y - minY) / cellSize), rows);
+  }
+
+  private static int clamp(int index, int count)
+  {
+    return index < 0 ? 0 : (index >= count ? count - 1 : index);
+  }
+}
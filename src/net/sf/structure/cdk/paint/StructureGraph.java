@@ -0,0 +1,241 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+/**
+ * <p>
+ * A snapshot of the connectivity and coordinates of a structure, addressed by atom
+ * and bond index. Neighbor lists are stored in compressed form, so degree and
+ * neighbor queries cost time proportional to the degree of the atom rather than to
+ * the size of the structure.
+ * </p>
+ *
+ * <p>
+ * Neighbors are listed in bond order, as <code>IAtomContainer.getConnectedAtomsList</code>
+ * lists them. Y-coordinates are negated to match the <code>Graphics</code> coordinate
+ * system. The snapshot does not follow later changes to the structure, except that
+ * {@link #update(int)} reads the coordinates of an atom again.
+ * </p>
+ */
+final class StructureGraph
+{
+  private IAtomContainer structure;
+  private IAtom[] atoms;
+  private IBond[] bonds;
+  private Map<IAtom, Integer> atomIndices;
+  private double[] x;
+  private double[] y;
+  private int[] sources;
+  private int[] targets;
+  private int[] neighborOffsets;
+  private int[] neighbors;
+  private int[] neighborBonds;
+
+  /**
+   * Takes a snapshot of <code>structure</code>.
+   *
+   * @param structure the structure
+   */
+  StructureGraph(IAtomContainer structure)
+  {
+    int atomCount = structure.getAtomCount();
+    int bondCount = structure.getBondCount();
+
+    this.structure = structure;
+    this.atoms = new IAtom[atomCount];
+    this.bonds = new IBond[bondCount];
+    this.atomIndices = new HashMap<IAtom, Integer>();
+    this.x = new double[atomCount];
+    this.y = new double[atomCount];
+    this.sources = new int[bondCount];
+    this.targets = new int[bondCount];
+    this.neighborOffsets = new int[atomCount + 1];
+    this.neighbors = new int[2 * bondCount];
+    this.neighborBonds = new int[2 * bondCount];
+
+    for (int i = 0; i < atomCount; i++)
+    {
+      IAtom atom = structure.getAtom(i);
+
+      atoms[i] = atom;
+      atomIndices.put(atom, Integer.valueOf(i));
+      update(i);
+    }
+
+    for (int i = 0; i < bondCount; i++)
+    {
+      bonds[i] = structure.getBond(i);
+      sources[i] = getAtomIndex(bonds[i].getAtom(0));
+      targets[i] = getAtomIndex(bonds[i].getAtom(1));
+      neighborOffsets[sources[i] + 1]++;
+      neighborOffsets[targets[i] + 1]++;
+    }
+
+    for (int i = 0; i < atomCount; i++)
+    {
+      neighborOffsets[i + 1] += neighborOffsets[i];
+    }
+
+    int[] next = new int[atomCount];
+
+    System.arraycopy(neighborOffsets, 0, next, 0, atomCount);
+
+    for (int i = 0; i < bondCount; i++)
+    {
+      neighborBonds[next[sources[i]]] = i;
+      neighbors[next[sources[i]]++] = targets[i];
+      neighborBonds[next[targets[i]]] = i;
+      neighbors[next[targets[i]]++] = sources[i];
+    }
+  }
+
+  /**
+   * Reads the coordinates of <code>atom</code> from the structure again.
+   *
+   * @param atom an atom index
+   */
+  void update(int atom)
+  {
+    x[atom] = atoms[atom].getPoint2d().x;
+    y[atom] = -atoms[atom].getPoint2d().y; // match molfile y-coordinate with Graphics y-coordinate
+  }
+
+  /**
+   * Returns the structure this snapshot was taken from.
+   *
+   * @return the structure
+   */
+  IAtomContainer getStructure()
+  {
+    return structure;
+  }
+
+  int getAtomCount()
+  {
+    return atoms.length;
+  }
+
+  int getBondCount()
+  {
+    return bonds.length;
+  }
+
+  IAtom getAtom(int atom)
+  {
+    return atoms[atom];
+  }
+
+  IBond getBond(int bond)
+  {
+    return bonds[bond];
+  }
+
+  /**
+   * Returns the index of <code>atom</code>, or -1 if it is not in the structure.
+   *
+   * @param atom an atom
+   * @return the index of <code>atom</code>
+   */
+  int getAtomIndex(IAtom atom)
+  {
+    Integer result = atomIndices.get(atom);
+
+    return result == null ? -1 : result.intValue();
+  }
+
+  double getX(int atom)
+  {
+    return x[atom];
+  }
+
+  double getY(int atom)
+  {
+    return y[atom];
+  }
+
+  int getSource(int bond)
+  {
+    return sources[bond];
+  }
+
+  int getTarget(int bond)
+  {
+    return targets[bond];
+  }
+
+  int getDegree(int atom)
+  {
+    return neighborOffsets[atom + 1] - neighborOffsets[atom];
+  }
+
+  /**
+   * Returns the <code>n</code>th neighbor of <code>atom</code>.
+   *
+   * @param atom an atom index
+   * @param n the position of the neighbor, less than the degree of <code>atom</code>
+   * @return the index of the neighbor
+   */
+  int getNeighbor(int atom, int n)
+  {
+    return neighbors[neighborOffsets[atom] + n];
+  }
+
+  /**
+   * Returns the bond joining <code>atom</code> to its <code>n</code>th neighbor.
+   *
+   * @param atom an atom index
+   * @param n the position of the neighbor, less than the degree of <code>atom</code>
+   * @return the index of the bond
+   */
+  int getNeighborBond(int atom, int n)
+  {
+    return neighborBonds[neighborOffsets[atom] + n];
+  }
+
+  /**
+   * Returns <code>true</code> if <code>atom</code> and <code>other</code> are bonded.
+   *
+   * @param atom an atom index
+   * @param other another atom index
+   * @return <code>true</code> if the atoms are bonded
+   */
+  boolean isBonded(int atom, int other)
+  {
+    for (int i = neighborOffsets[atom]; i < neighborOffsets[atom + 1]; i++)
+    {
+      if (neighbors[i] == other)
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
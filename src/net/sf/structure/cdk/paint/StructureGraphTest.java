@@ -0,0 +1,136 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.paint;
+
+import java.io.File;
+import java.io.FileReader;
+import java.util.List;
+
+import javax.vecmath.Point2d;
+
+import junit.framework.TestCase;
+
+import org.openscience.cdk.Atom;
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.io.MDLReader;
+
+/**
+ * Tests for <code>StructureGraph</code>. Kept in the package of the class it tests,
+ * which is not public.
+ */
+public class StructureGraphTest extends TestCase
+{
+  public void testNeighborsMatchStructure() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      IAtomContainer structure = readMolecule(molfiles[i]);
+      StructureGraph graph = new StructureGraph(structure);
+
+      assertEquals(structure.getAtomCount(), graph.getAtomCount());
+      assertEquals(structure.getBondCount(), graph.getBondCount());
+
+      for (int atom = 0; atom < graph.getAtomCount(); atom++)
+      {
+        String name = molfiles[i].getName() + " atom " + atom;
+        IAtom expected = structure.getAtom(atom);
+        List<IAtom> neighbors = structure.getConnectedAtomsList(expected);
+
+        assertSame(expected, graph.getAtom(atom));
+        assertEquals(name, atom, graph.getAtomIndex(expected));
+        assertEquals(name, neighbors.size(), graph.getDegree(atom));
+
+        // layout depends on neighbors coming in the order the structure lists them
+        for (int n = 0; n < neighbors.size(); n++)
+        {
+          IBond bond = graph.getBond(graph.getNeighborBond(atom, n));
+
+          assertSame(name, neighbors.get(n), graph.getAtom(graph.getNeighbor(atom, n)));
+          assertSame(name, structure.getBond(expected, neighbors.get(n)), bond);
+        }
+
+        assertFalse(name, graph.isBonded(atom, atom));
+
+        for (int other = 0; other < graph.getAtomCount(); other++)
+        {
+          if (other != atom)
+          {
+            assertEquals(name + " and " + other, structure.getBond(expected, structure.getAtom(other)) != null,
+              graph.isBonded(atom, other));
+          }
+        }
+      }
+    }
+  }
+
+  public void testSnapshotCoordinates() throws Exception
+  {
+    IAtomContainer structure = readMolecule(getMolfiles()[0]);
+    StructureGraph graph = new StructureGraph(structure);
+    IAtom atom = structure.getAtom(0);
+    Point2d point = atom.getPoint2d();
+
+    assertEquals(point.x, graph.getX(0), 0);
+    assertEquals(-point.y, graph.getY(0), 0);
+
+    atom.setPoint2d(new Point2d(point.x + 1, point.y + 2));
+
+    assertEquals(point.x, graph.getX(0), 0);
+
+    graph.update(0);
+
+    assertEquals(point.x + 1, graph.getX(0), 0);
+    assertEquals(-point.y - 2, graph.getY(0), 0);
+    assertEquals(-1, graph.getAtomIndex(new Atom("C")));
+  }
+
+  private File[] getMolfiles()
+  {
+    File dir = new File(System.getProperty("molfiles", "molfiles"));
+    File[] result = dir.listFiles();
+
+    assertNotNull("molfile directory not found: " + dir.getAbsolutePath(), result);
+
+    return result;
+  }
+
+  private IAtomContainer readMolecule(File molfile) throws Exception
+  {
+    FileReader reader = new FileReader(molfile);
+
+    try
+    {
+      return (IAtomContainer) new MDLReader(reader).read(new Molecule());
+    }
+
+    finally
+    {
+      reader.close();
+    }
+  }
+}
@@ -22,37 +22,120 @@
  */
 package net.sf.structure.cdk.paint;
 
+import java.awt.AlphaComposite;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectChangeEvent;
+import org.openscience.cdk.interfaces.IChemObjectListener;
 
 
 /**
+ * <p>
  * A <code>JComponent</code> capable of rendering 2-D molecular representations.
+ * </p>
+ * 
+ * <p>
+ * The component listens to its structure and repaints whenever it changes. Its
+ * default painter lays out edits incrementally, so editing a large structure
+ * one atom or bond at a time stays responsive.
+ * </p>
+ * 
+ * <p>
+ * The structure is painted into a backing image, a <code>VolatileImage</code> where
+ * the screen supports one, that is kept until the structure, the settings, the size
+ * of the component or the screen it is shown on change. Other repaints, such as
+ * those caused by uncovering the component, copy the image. Components too large to
+ * keep an image for, and printed components, are painted directly, within the clip.
+ * </p>
+ * 
+ * <p>
+ * If an <code>ExecutorService</code> is set and the painter is a
+ * <code>DefaultGraphicsPainter</code>, structures are laid out on the executor, and
+ * the previous structure stays on screen until the new plan is installed on the
+ * event dispatch thread. Of several structures set in quick succession only the
+ * last is laid out to the end; earlier layouts are cancelled or their results
+ * discarded. The executor belongs to the caller, who chooses its kind and size and
+ * shuts it down.
+ * </p>
+ * 
+ * <p>
+ * In progressive mode, frames painted while the user pans or zooms are drafts: bonds
+ * only, without atom labels or antialiasing. The component counts as interacting
+ * from each call to {@link #interact()}, and from each paint at a new size, until
+ * no further interaction has occurred for the idle delay; it then repaints at full
+ * quality. Drafts require a <code>DefaultGraphicsPainter</code>.
+ * </p>
  * 
  * @author Richard Apodaca
  */
 public class SwingPainter extends JComponent implements Painter
 {
   private static final long serialVersionUID = 1;
+  private static final int MAXIMUM_BACKING_PIXELS = 4 * 1024 * 1024;
+  private static final ThreadLocal<Boolean> LAYING_OUT = new ThreadLocal<Boolean>();
+  private static final int DEFAULT_IDLE_DELAY = 250;
   private GraphicsPainter painter = null;
+  private IChemObjectListener repainter = new Repainter();
+  private IAtomContainer structure = null;
+  private transient ExecutorService executor = null;
+  private transient volatile Future<?> layout = null;
+  private int layoutCount = 0;
+  private transient Image backingImage = null;
+  private transient double backingScale = 0;
+  private volatile boolean backingValid = false;
+  private boolean progressive = false;
+  private int idleDelay = DEFAULT_IDLE_DELAY;
+  private transient Timer idleTimer = null;
+  private int paintedWidth = 0;
+  private int paintedHeight = 0;
   
   public SwingPainter()
   {
     super();
     
-    this.painter = new DefaultGraphicsPainter();
+    DefaultGraphicsPainter defaultPainter = new DefaultGraphicsPainter();
+    
+    defaultPainter.setIncrementalLayout(true);
+    
+    this.painter = defaultPainter;
   }
   
+  /**
+   * Constructs a <code>SwingPainter</code> using <code>painter</code>.
+   * 
+   * @param painter the GraphicsPainter to be used
+   */
+  public SwingPainter(GraphicsPainter painter)
+  {
+    super();
+    
+    this.painter = painter;
+  }
+
   /* (non-Javadoc)
    * @see net.sf.josef.paint.Painter#getAtomContainer()
    */
   public IAtomContainer getAtomContainer()
   {
-    return painter.getAtomContainer();
+    return structure;
   }
 
   /* (non-Javadoc)
@@ -60,23 +143,126 @@ public class SwingPainter extends JComponent implements Painter
    */
   public void setAtomContainer(IAtomContainer ac)
   {
+    if (structure != null)
+    {
+      structure.removeListener(repainter);
+    }
+    
+    this.structure = ac;
+    
+    if (ac != null)
+    {
+      ac.addListener(repainter);
+    }
+    
+    if (ac != null && executor != null && painter instanceof DefaultGraphicsPainter)
+    {
+      startLayout();
+      
+      return;
+    }
+    
+    cancelLayout();
     painter.setAtomContainer(ac);
     
+    backingValid = false;
+    
     repaint();
   }
-
+  
   /**
-   * Constructs a <code>SwingPainter</code> using <code>painter</code>.
+   * Sets the executor on which structures are laid out. Call on the event dispatch
+   * thread.
    * 
-   * @param painter the GraphicsPainter to be used
+   * @param executor the executor, or <code>null</code> to lay out structures on the
+   * event dispatch thread
    */
-  public SwingPainter(GraphicsPainter painter)
+  public void setExecutor(ExecutorService executor)
   {
-    super();
+    this.executor = executor;
+  }
+  
+  /**
+   * Returns <code>true</code> if this component paints drafts while the user
+   * interacts with it.
+   * 
+   * @return <code>true</code> if progressive mode is active
+   */
+  public boolean isProgressive()
+  {
+    return progressive;
+  }
+  
+  /**
+   * Activates or deactivates progressive mode. Deactivated by default.
+   * 
+   * @param progressive use <code>true</code> to paint drafts while the user interacts
+   * with this component
+   */
+  public void setProgressive(boolean progressive)
+  {
+    this.progressive = progressive;
     
-    this.painter = painter;
+    if (!progressive && idleTimer != null && idleTimer.isRunning())
+    {
+      idleTimer.stop();
+      repaint();
+    }
   }
-
+  
+  /**
+   * Returns the time without interaction after which a full-quality frame is painted.
+   * 
+   * @return the idle delay, in milliseconds
+   */
+  public int getIdleDelay()
+  {
+    return idleDelay;
+  }
+  
+  /**
+   * Sets the time without interaction after which a full-quality frame is painted.
+   * The default is 250 milliseconds.
+   * 
+   * @param idleDelay the idle delay, in milliseconds
+   */
+  public void setIdleDelay(int idleDelay)
+  {
+    if (idleDelay < 0)
+    {
+      throw new IllegalArgumentException("Idle delay must not be negative: " + idleDelay);
+    }
+    
+    this.idleDelay = idleDelay;
+    
+    if (idleTimer != null)
+    {
+      idleTimer.setInitialDelay(idleDelay);
+    }
+  }
+  
+  /**
+   * Tells this component that the user is interacting with it, for example dragging
+   * or zooming the view it belongs to. In progressive mode, paints are drafts until
+   * no interaction has been reported for the idle delay. Call on the event dispatch
+   * thread, typically from mouse and key listeners.
+   */
+  public void interact()
+  {
+    if (!progressive)
+    {
+      return;
+    }
+    
+    if (idleTimer == null)
+    {
+      idleTimer = new Timer(idleDelay, new IdleListener());
+      idleTimer.setRepeats(false);
+    }
+    
+    idleTimer.restart();
+  }
+  
   /* (non-Javadoc)
    * @see javax.swing.JComponent#paint(java.awt.Graphics)
    */
@@ -84,7 +270,136 @@ public class SwingPainter extends JComponent implements Painter
   {
     super.paint(g);
 
-    painter.paint((Graphics2D) g, getBounds());
+    Graphics2D g2 = (Graphics2D) g;
+    double scale = getDeviceScale(g2);
+    int width = (int) Math.ceil(getWidth() * scale);
+    int height = (int) Math.ceil(getHeight() * scale);
+    boolean printing = g2.getDeviceConfiguration().getDevice().getType() == GraphicsDevice.TYPE_PRINTER;
+    
+    if (progressive && !printing && painter instanceof DefaultGraphicsPainter)
+    {
+      if (paintedWidth > 0 && (paintedWidth != width || paintedHeight != height))
+      {
+        // resized, as when a view is zoomed by resizing the component
+        interact();
+      }
+      
+      paintedWidth = width;
+      paintedHeight = height;
+      
+      if (idleTimer != null && idleTimer.isRunning())
+      {
+        ((DefaultGraphicsPainter) painter).paintDraft(g2, getBounds());
+        
+        return;
+      }
+    }
+    
+    if (width < 1 || height < 1 || (long) width * height > MAXIMUM_BACKING_PIXELS || printing)
+    {
+      backingImage = null;
+      
+      painter.paint(g2, getBounds());
+      
+      return;
+    }
+    
+    do
+    {
+      if (!isBackingImageUsable(g2.getDeviceConfiguration(), width, height, scale))
+      {
+        backingImage = createBackingImage(g2.getDeviceConfiguration(), width, height);
+        backingScale = scale;
+        backingValid = false;
+      }
+      
+      if (!backingValid)
+      {
+        // marked valid first, so that a change made while painting invalidates it again
+        backingValid = true;
+        
+        paintBackingImage(scale);
+      }
+      
+      g2.drawImage(backingImage, 0, 0, getWidth(), getHeight(), null);
+    }
+    
+    while (backingImage instanceof VolatileImage && ((VolatileImage) backingImage).contentsLost());
+  }
+  
+  /**
+   * Returns the scale from user space to device pixels of <code>g</code>, greater than
+   * one on high-resolution screens.
+   */
+  private double getDeviceScale(Graphics2D g)
+  {
+    AffineTransform transform = g.getDeviceConfiguration().getDefaultTransform();
+    
+    return Math.max(transform.getScaleX(), 1);
+  }
+  
+  /**
+   * Returns <code>true</code> if the backing image fits the current size and screen,
+   * marking it invalid if its contents were lost.
+   */
+  private boolean isBackingImageUsable(GraphicsConfiguration gc, int width, int height, double scale)
+  {
+    if (backingImage == null || backingScale != scale || backingImage.getWidth(null) != width ||
+      backingImage.getHeight(null) != height)
+    {
+      return false;
+    }
+    
+    if (backingImage instanceof VolatileImage)
+    {
+      int status = ((VolatileImage) backingImage).validate(gc);
+      
+      if (status == VolatileImage.IMAGE_INCOMPATIBLE)
+      {
+        return false;
+      }
+      
+      if (status == VolatileImage.IMAGE_RESTORED)
+      {
+        backingValid = false;
+      }
+    }
+    
+    return true;
+  }
+  
+  private Image createBackingImage(GraphicsConfiguration gc, int width, int height)
+  {
+    if (gc != null && !GraphicsEnvironment.isHeadless())
+    {
+      Image result = gc.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+      
+      if (result != null)
+      {
+        return result;
+      }
+    }
+    
+    return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+  }
+  
+  private void paintBackingImage(double scale)
+  {
+    Graphics2D g = (Graphics2D) backingImage.getGraphics();
+    
+    try
+    {
+      g.setComposite(AlphaComposite.Clear);
+      g.fillRect(0, 0, backingImage.getWidth(null), backingImage.getHeight(null));
+      g.setComposite(AlphaComposite.SrcOver);
+      g.scale(scale, scale);
+      painter.paint(g, getBounds());
+    }
+    
+    finally
+    {
+      g.dispose();
+    }
   }
 
   /* (non-Javadoc)
@@ -100,8 +415,178 @@ public class SwingPainter extends JComponent implements Painter
    */
   public void importSettings(SettingsImporter importer)
   {
-    painter.importSettings(importer);
+    if (structure != null && executor != null && painter instanceof DefaultGraphicsPainter)
+    {
+      ((DefaultGraphicsPainter) painter).applySettings(importer);
+      startLayout();
+      
+      return;
+    }
+    
+    if (layout != null)
+    {
+      // the executor was removed while the current structure was being laid out
+      cancelLayout();
+      ((DefaultGraphicsPainter) painter).applySettings(importer);
+      painter.setAtomContainer(structure);
+    }
+    
+    else
+    {
+      painter.importSettings(importer);
+    }
+    
+    backingValid = false;
     
     repaint();
   }
+  
+  /**
+   * Cancels any pending layout and submits a layout of the current structure, with
+   * the current settings, to the executor.
+   */
+  private void startLayout()
+  {
+    cancelLayout();
+    
+    Layout task = new Layout(structure, ((DefaultGraphicsPainter) painter).createBuilder(structure), layoutCount);
+    
+    layout = executor.submit(task);
+  }
+  
+  private void cancelLayout()
+  {
+    layoutCount++;
+    
+    if (layout != null)
+    {
+      layout.cancel(true);
+      
+      layout = null;
+    }
+  }
+  
+  /**
+   * Installs the plan of a finished layout, unless another layout was started or the
+   * structure was set since.
+   */
+  private void finishLayout(Layout task)
+  {
+    if (task.count != layoutCount)
+    {
+      return;
+    }
+    
+    layout = null;
+    
+    if (task.failure != null)
+    {
+      throw task.failure;
+    }
+    
+    ((DefaultGraphicsPainter) painter).setAtomContainer(task.structure, task.builder, task.plan);
+    
+    backingValid = false;
+    
+    repaint();
+  }
+  
+  private final class Repainter implements IChemObjectListener
+  {
+    /* (non-Javadoc)
+     * @see org.openscience.cdk.interfaces.IChemObjectListener#stateChanged(org.openscience.cdk.interfaces.IChemObjectChangeEvent)
+     */
+    public void stateChanged(IChemObjectChangeEvent event)
+    {
+      // changes made by a layout itself, such as perceived aromaticity, are part of its result
+      if (LAYING_OUT.get() != null)
+      {
+        return;
+      }
+      
+      if (layout != null)
+      {
+        // a pending layout may have read the structure before the change
+        SwingUtilities.invokeLater(new Runnable()
+        {
+          public void run()
+          {
+            if (layout != null)
+            {
+              startLayout();
+            }
+          }
+        });
+      }
+      
+      backingValid = false;
+      
+      repaint();
+    }
+  }
+  
+  private final class IdleListener implements ActionListener
+  {
+    /* (non-Javadoc)
+     * @see java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     */
+    public void actionPerformed(ActionEvent event)
+    {
+      repaint();
+    }
+  }
+  
+  private final class Layout implements Runnable
+  {
+    private IAtomContainer structure;
+    private RenderPlanBuilder builder;
+    private int count;
+    private RenderPlan plan;
+    private RuntimeException failure;
+    private boolean done;
+    
+    private Layout(IAtomContainer structure, RenderPlanBuilder builder, int count)
+    {
+      this.structure = structure;
+      this.builder = builder;
+      this.count = count;
+      this.plan = null;
+      this.failure = null;
+      this.done = false;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run()
+    {
+      if (done)
+      {
+        finishLayout(this);
+        
+        return;
+      }
+      
+      LAYING_OUT.set(Boolean.TRUE);
+      
+      try
+      {
+        plan = builder.build();
+      }
+      
+      catch (RuntimeException e)
+      {
+        failure = e;
+      }
+      
+      finally
+      {
+        LAYING_OUT.remove();
+      }
+      
+      done = true;
+      
+      SwingUtilities.invokeLater(this);
+    }
+  }
 }
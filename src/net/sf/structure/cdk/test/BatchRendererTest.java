@@ -0,0 +1,242 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import net.sf.structure.cdk.util.BatchRenderer;
+
+/**
+ * Tests for <code>BatchRenderer</code>.
+ */
+public class BatchRendererTest extends TestCase
+{
+  private File directory;
+  private ExecutorService executor;
+
+  protected void setUp() throws Exception
+  {
+    directory = File.createTempFile("batch", "");
+    directory.delete();
+    directory.mkdirs();
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  protected void tearDown() throws Exception
+  {
+    executor.shutdownNow();
+    executor.awaitTermination(60, TimeUnit.SECONDS);
+    delete(directory);
+  }
+
+  public void testRenderDirectory() throws Exception
+  {
+    File[] molfiles = ImageTest.getMolfiles();
+    BatchRenderer renderer = new BatchRenderer(executor, 3);
+    RecordingListener listener = new RecordingListener(renderer, 0);
+    File output = new File(directory, "out");
+
+    renderer.setListener(listener);
+    renderer.renderDirectory(new File(System.getProperty("molfiles", "molfiles")), output);
+
+    // every record has completed, and been reported, by the time the call returns
+    assertEquals(molfiles.length, renderer.getSubmittedCount());
+    assertEquals(molfiles.length, renderer.getRenderedCount());
+    assertEquals(0, renderer.getFailedCount());
+    assertEquals(molfiles.length, listener.rendered.size());
+    assertTrue(listener.failed.isEmpty());
+    assertTrue(renderer.getThroughput() > 0);
+
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      String name = molfiles[i].getName();
+      File image = new File(output, name.substring(0, name.lastIndexOf('.')) + ".png");
+
+      assertTrue(image.getName(), image.length() > 0);
+    }
+  }
+
+  public void testMalformedRecordFailsAlone() throws Exception
+  {
+    File sdFile = new File(directory, "mixed.sdf");
+    Writer writer = new FileWriter(sdFile);
+
+    try
+    {
+      appendRecord(writer, "caffeine.mol");
+      writer.write("not a molfile\n\n\nxyz\nM  END\n$$$$\n");
+      appendRecord(writer, "indole.mol");
+      appendRecord(writer, "tamiflu.mol");
+    }
+
+    finally
+    {
+      writer.close();
+    }
+
+    BatchRenderer renderer = new BatchRenderer(executor, 2);
+    RecordingListener listener = new RecordingListener(renderer, 0);
+    File output = new File(directory, "out");
+
+    renderer.setListener(listener);
+    renderer.renderSDFile(sdFile, output);
+
+    assertEquals(4, renderer.getSubmittedCount());
+    assertEquals(3, renderer.getRenderedCount());
+    assertEquals(1, renderer.getFailedCount());
+    assertEquals(Collections.singletonList("mixed-2"), listener.failed);
+    assertEquals(3, listener.rendered.size());
+    assertTrue(new File(output, "mixed-4.png").length() > 0);
+    assertFalse(new File(output, "mixed-2.png").exists());
+  }
+
+  public void testCapacityBoundsOutstandingRecords() throws Exception
+  {
+    File sdFile = new File(directory, "many.sdf");
+    Writer writer = new FileWriter(sdFile);
+
+    try
+    {
+      for (int i = 0; i < 24; i++)
+      {
+        appendRecord(writer, "indole.mol");
+      }
+    }
+
+    finally
+    {
+      writer.close();
+    }
+
+    BatchRenderer renderer = new BatchRenderer(executor, 2);
+    RecordingListener listener = new RecordingListener(renderer, 20);
+
+    renderer.setSize(50, 50);
+    renderer.setListener(listener);
+    renderer.renderSDFile(sdFile, new File(directory, "out"));
+
+    assertEquals(24, renderer.getRenderedCount());
+    assertTrue("outstanding: " + listener.maximumOutstanding, listener.maximumOutstanding <= 2);
+  }
+
+  private void appendRecord(Writer writer, String molfile) throws IOException
+  {
+    BufferedReader reader = new BufferedReader(
+      new FileReader(new File(System.getProperty("molfiles", "molfiles"), molfile)));
+
+    try
+    {
+      for (String line = reader.readLine(); line != null; line = reader.readLine())
+      {
+        writer.write(line);
+        writer.write('\n');
+      }
+    }
+
+    finally
+    {
+      reader.close();
+    }
+
+    writer.write("$$$$\n");
+  }
+
+  private void delete(File file)
+  {
+    File[] children = file.listFiles();
+
+    for (int i = 0; children != null && i < children.length; i++)
+    {
+      delete(children[i]);
+    }
+
+    file.delete();
+  }
+
+  /**
+   * Records the names of completed records and the largest number of records that
+   * were submitted but not completed while one of them was being reported. Each
+   * report takes at least <code>delay</code> milliseconds, holding up its worker.
+   */
+  private static final class RecordingListener implements BatchRenderer.Listener
+  {
+    private BatchRenderer renderer;
+    private long delay;
+    private List<String> rendered = Collections.synchronizedList(new ArrayList<String>());
+    private List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+    private long maximumOutstanding = 0;
+
+    private RecordingListener(BatchRenderer renderer, long delay)
+    {
+      this.renderer = renderer;
+      this.delay = delay;
+    }
+
+    public void recordRendered(int index, String name, File output)
+    {
+      rendered.add(name);
+      report();
+    }
+
+    public void recordFailed(int index, String name, Exception error)
+    {
+      failed.add(name);
+      report();
+    }
+
+    private void report()
+    {
+      // the reporting record still holds its place, so it counts as outstanding
+      long outstanding = renderer.getSubmittedCount() - renderer.getRenderedCount() -
+        renderer.getFailedCount() + 1;
+
+      synchronized (this)
+      {
+        maximumOutstanding = Math.max(maximumOutstanding, outstanding);
+      }
+
+      try
+      {
+        Thread.sleep(delay);
+      }
+
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
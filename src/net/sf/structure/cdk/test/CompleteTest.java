@@ -25,6 +25,11 @@ package net.sf.structure.cdk.test;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
 
+import net.sf.structure.cdk.paint.BaselineRenderTest;
+import net.sf.structure.cdk.paint.LabelCacheTest;
+import net.sf.structure.cdk.paint.RingIndexTest;
+import net.sf.structure.cdk.paint.StructureGraphTest;
+
 /**
  * The main entry point into the unit testing framework.
  * 
@@ -50,6 +55,12 @@ public class CompleteTest
     TestSuite suite = new TestSuite();
     
     suite.addTestSuite(ImageTest.class);
+    suite.addTestSuite(RenderCacheTest.class);
+    suite.addTestSuite(BatchRendererTest.class);
+    suite.addTestSuite(LabelCacheTest.class);
+    suite.addTestSuite(RingIndexTest.class);
+    suite.addTestSuite(StructureGraphTest.class);
+    suite.addTestSuite(BaselineRenderTest.class);
     
     //suite.addTestSuite(StructureBuilderTest.class);
     //suite.addTestSuite(FlexMol2DRoundTripTest.class);
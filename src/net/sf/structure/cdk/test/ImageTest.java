@@ -5,12 +5,53 @@ package net.sf.structure.cdk.test;
 
 import junit.framework.TestCase;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileReader;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+import javax.vecmath.Point2d;
 
+import net.sf.structure.cdk.paint.ColorScheme;
+import net.sf.structure.cdk.paint.DefaultColorScheme;
+import net.sf.structure.cdk.paint.DefaultGraphicsPainter;
+import net.sf.structure.cdk.paint.GraphicsPainter;
+import net.sf.structure.cdk.paint.Painter;
+import net.sf.structure.cdk.paint.RenderPlan;
+import net.sf.structure.cdk.paint.SwingPainter;
+import net.sf.structure.cdk.util.GridRenderer;
 import net.sf.structure.cdk.util.ImageKit;
+import net.sf.structure.cdk.util.ImagePool;
+import net.sf.structure.cdk.util.PNGEncoder;
+import net.sf.structure.cdk.util.TiledRenderer;
 import org.openscience.cdk.io.MDLReader;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IMolecule;
 import org.openscience.cdk.Molecule;
+import org.openscience.cdk.Atom;
+import org.openscience.cdk.Bond;
+import org.openscience.cdk.CDKConstants;
 
 /**
  * @author rich
@@ -37,6 +78,840 @@ public class ImageTest extends TestCase
   {
     
   }
+  
+  public void testConcurrentRendering() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    List<BufferedImage> expected = new ArrayList<BufferedImage>();
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      expected.add(render(molfiles[i]));
+    }
+    
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<BufferedImage>> results = new ArrayList<Future<BufferedImage>>();
+    
+    try
+    {
+      for (int round = 0; round < 4; round++)
+      {
+        for (int i = 0; i < molfiles.length; i++)
+        {
+          final File molfile = molfiles[i];
+          
+          results.add(executor.submit(new Callable<BufferedImage>()
+          {
+            public BufferedImage call() throws Exception
+            {
+              return render(molfile);
+            }
+          }));
+        }
+      }
+      
+      for (int i = 0; i < results.size(); i++)
+      {
+        assertSimilarImage(expected.get(i % molfiles.length), results.get(i).get());
+      }
+    }
+    
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  public void testConcurrentRenderingOfSharedStructure() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    try
+    {
+      for (int i = 0; i < molfiles.length; i++)
+      {
+        final IMolecule molecule = readMolecule(molfiles[i]);
+        BufferedImage expected = render(molfiles[i]);
+        boolean[] flags = new boolean[molecule.getAtomCount()];
+        List<Future<BufferedImage>> results = new ArrayList<Future<BufferedImage>>();
+        
+        for (int atom = 0; atom < flags.length; atom++)
+        {
+          flags[atom] = atom % 2 == 0;
+          molecule.getAtom(atom).setFlag(CDKConstants.ISAROMATIC, flags[atom]);
+        }
+        
+        for (int round = 0; round < 16; round++)
+        {
+          results.add(executor.submit(new Callable<BufferedImage>()
+          {
+            public BufferedImage call() throws Exception
+            {
+              return (BufferedImage) ImageKit.createRenderedImage(molecule, 300, 300);
+            }
+          }));
+        }
+        
+        for (int round = 0; round < results.size(); round++)
+        {
+          assertSimilarImage(expected, results.get(round).get());
+        }
+        
+        // perception works on a copy, so rendering leaves the flags of the structure alone
+        for (int atom = 0; atom < flags.length; atom++)
+        {
+          assertEquals(molfiles[i].getName(), flags[atom], molecule.getAtom(atom).getFlag(CDKConstants.ISAROMATIC));
+        }
+      }
+    }
+    
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  public void testRenderPlanReuse() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      RenderPlan plan = ImageKit.createRenderPlan(readMolecule(molfiles[i]), null);
+      BufferedImage expected = render(molfiles[i]);
+      
+      assertSimilarImage(expected, (BufferedImage) ImageKit.createRenderedImage(plan, 300, 300));
+      assertSimilarImage(expected, (BufferedImage) ImageKit.createRenderedImage(plan, 300, 300));
+    }
+  }
+  
+  public void testStreamOutput() throws Exception
+  {
+    RenderPlan plan = ImageKit.createRenderPlan(readMolecule(getMolfiles()[0]), null);
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ByteArrayOutputStream channelStream = new ByteArrayOutputStream();
+    
+    ImageKit.writePNG(plan, 300, 300, stream);
+    ImageKit.write(plan, "png", 300, 300, Channels.newChannel(channelStream));
+    
+    ByteBuffer buffer = ImageKit.createImageBuffer(plan, "png", 300, 300);
+    byte[] bufferBytes = new byte[buffer.remaining()];
+    
+    buffer.get(bufferBytes);
+    
+    assertTrue(Arrays.equals(stream.toByteArray(), channelStream.toByteArray()));
+    assertTrue(Arrays.equals(stream.toByteArray(), bufferBytes));
+    assertSimilarImage((BufferedImage) ImageKit.createRenderedImage(plan, 300, 300),
+      ImageIO.read(new ByteArrayInputStream(bufferBytes)));
+  }
+  
+  public void testPooledRendering() throws Exception
+  {
+    RenderPlan plan = ImageKit.createRenderPlan(readMolecule(getMolfiles()[0]), null);
+    RenderPlan other = ImageKit.createRenderPlan(readMolecule(getMolfiles()[1]), null);
+    BufferedImage expected = (BufferedImage) ImageKit.createRenderedImage(plan, 300, 300);
+    ImagePool pool = new ImagePool(2, 4);
+    
+    ImageKit.setImagePool(pool);
+    
+    try
+    {
+      ImageKit.createImageBuffer(other, "png", 300, 300);
+      
+      ByteBuffer buffer = ImageKit.createImageBuffer(plan, "png", 300, 300);
+      
+      assertSimilarImage(expected,
+        ImageIO.read(new ByteArrayInputStream(buffer.array(), 0, buffer.limit())));
+      assertEquals(1, pool.getCreatedCount());
+      assertEquals(1, pool.getReusedCount());
+    }
+    
+    finally
+    {
+      ImageKit.setImagePool(null);
+    }
+  }
+  
+  public void testBatchStroking() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+    
+    painter.setBatchStroking(true);
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      BufferedImage expected = render(molfiles[i]);
+      BufferedImage actual = (BufferedImage) ImageKit.createRenderedImage(
+        painter.createRenderPlan(readMolecule(molfiles[i])), 300, 300);
+      int different = 0;
+      
+      for (int y = 0; y < expected.getHeight(); y++)
+      {
+        for (int x = 0; x < expected.getWidth(); x++)
+        {
+          if (Math.abs((expected.getRGB(x, y) & 0xff) - (actual.getRGB(x, y) & 0xff)) > 2)
+          {
+            different++;
+          }
+        }
+      }
+      
+      // only antialiased pixels where bond lines overlap may differ
+      assertTrue(different < 300);
+    }
+  }
+  
+  public void testGridRendering() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    List<RenderPlan> plans = new ArrayList<RenderPlan>();
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      plans.add(ImageKit.createRenderPlan(readMolecule(molfiles[i]), null));
+    }
+    
+    GridRenderer renderer = new GridRenderer(4, 200, 160);
+    Rectangle2D[] bounds = renderer.getBounds(plans);
+    double bondLength = bounds[0].getWidth() / plans.get(0).getBounds().getWidth() * plans.get(0).getAtomPairLength();
+    
+    for (int i = 0; i < bounds.length; i++)
+    {
+      double scale = bounds[i].getWidth() / plans.get(i).getBounds().getWidth();
+      
+      assertEquals(bondLength, scale * plans.get(i).getAtomPairLength(), 1.0e-6);
+      assertTrue(bounds[i].getMaxX() <= (i % 4 + 1) * 200 + 1.0e-6);
+      assertTrue(bounds[i].getMaxY() <= (i / 4 + 1) * 160 + 1.0e-6);
+    }
+    
+    BufferedImage expected = renderer.createImage(plans);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    try
+    {
+      renderer.setExecutor(executor);
+      
+      BufferedImage actual = renderer.createImage(plans);
+      
+      assertEquals(renderer.getWidth(plans.size()), actual.getWidth());
+      assertEquals(renderer.getHeight(plans.size()), actual.getHeight());
+      assertSimilarImage(expected, actual);
+    }
+    
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  public void testTiledRendering() throws Exception
+  {
+    RenderPlan plan = ImageKit.createRenderPlan(readMolecule(getMolfiles()[0]), null);
+    BufferedImage expected = (BufferedImage) ImageKit.createRenderedImage(plan, 700, 500);
+    TiledRenderer renderer = new TiledRenderer(128, 96);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    try
+    {
+      renderer.setExecutor(executor);
+      assertSimilarImage(expected, renderer.createImage(plan, 700, 500));
+      
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      
+      renderer.writePNG(plan, 700, 500, out);
+      assertSimilarImage(expected, ImageIO.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+    
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  public void testClippedPainting() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+    Rectangle clip = new Rectangle(70, 50, 120, 140);
+    double[] scales = { 1, 2, 0.75 };
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      painter.setAtomContainer(readMolecule(molfiles[i]));
+      
+      assertSimilarImage(render(molfiles[i]).getSubimage(clip.x, clip.y, clip.width, clip.height),
+        paintScaled(painter, 1, clip).getSubimage(clip.x, clip.y, clip.width, clip.height));
+      
+      for (int j = 0; j < scales.length; j++)
+      {
+        BufferedImage expected = paintScaled(painter, scales[j], null);
+        BufferedImage actual = paintScaled(painter, scales[j], clip);
+        
+        assertSimilarImage(expected.getSubimage(clip.x, clip.y, clip.width, clip.height),
+          actual.getSubimage(clip.x, clip.y, clip.width, clip.height));
+      }
+    }
+  }
+  
+  public void testIncrementalLayout() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+    
+    painter.setIncrementalLayout(true);
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      IMolecule molecule = readMolecule(molfiles[i]);
+      
+      painter.setAtomContainer(molecule);
+      
+      RenderPlan plan = painter.getRenderPlan();
+      IAtom atom = molecule.getAtom(0);
+      Point2d point = atom.getPoint2d();
+      IBond bond = molecule.getBond(0);
+      IBond.Order order = bond.getOrder();
+      
+      atom.setPoint2d(new Point2d(point.x + 0.02, point.y - 0.01));
+      assertNotSame(plan, painter.getRenderPlan());
+      bond.setOrder(IBond.Order.valueOf(order == IBond.Order.valueOf("DOUBLE") ? "SINGLE" : "DOUBLE"));
+      atom.setPoint2d(point);
+      bond.setOrder(order);
+      
+      assertSimilarImage(render(molfiles[i]),
+        (BufferedImage) ImageKit.createRenderedImage(painter.getRenderPlan(), 300, 300));
+    }
+  }
+  
+  public void testBackingImage() throws Exception
+  {
+    CountingPainter painter = new CountingPainter();
+    SwingPainter component = new SwingPainter(painter);
+    IMolecule molecule = readMolecule(getMolfiles()[0]);
+    
+    component.setSize(300, 300);
+    component.setAtomContainer(molecule);
+    
+    BufferedImage expected = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = expected.createGraphics();
+    
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, 300, 300);
+    painter.paint(g, new Rectangle(300, 300));
+    g.dispose();
+    
+    assertSimilarImage(expected, paintComponent(component));
+    assertSimilarImage(expected, paintComponent(component));
+    assertEquals(2, painter.paintCount);
+    
+    component.setSize(200, 250);
+    paintComponent(component);
+    assertEquals(3, painter.paintCount);
+    
+    molecule.getAtom(0).setPoint2d(new Point2d(0, 0));
+    paintComponent(component);
+    paintComponent(component);
+    assertEquals(4, painter.paintCount);
+  }
+  
+  public void testAsynchronousLayout() throws Exception
+  {
+    final File[] molfiles = getMolfiles();
+    final IMolecule[] molecules = new IMolecule[molfiles.length];
+    final DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+    final SwingPainter component = new SwingPainter(painter);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      molecules[i] = readMolecule(molfiles[i]);
+    }
+    
+    component.setExecutor(executor);
+    
+    SwingUtilities.invokeAndWait(new Runnable()
+    {
+      public void run()
+      {
+        for (int i = 0; i < molecules.length; i++)
+        {
+          component.setAtomContainer(molecules[i]);
+        }
+        
+        assertSame(molecules[molecules.length - 1], component.getAtomContainer());
+      }
+    });
+    
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+    
+    SwingUtilities.invokeAndWait(new Runnable()
+    {
+      public void run()
+      {
+        // installs the finished layout, queued before this
+      }
+    });
+    
+    assertSame(molecules[molecules.length - 1], painter.getAtomContainer());
+    assertSimilarImage(render(molfiles[molfiles.length - 1]),
+      (BufferedImage) ImageKit.createRenderedImage(painter.getRenderPlan(), 300, 300));
+  }
+  
+  public void testAsynchronousSettings() throws Exception
+  {
+    final File molfile = getMolfiles()[0];
+    final DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+    final SwingPainter component = new SwingPainter(painter);
+    final Painter.SettingsImporter settings = createSettings(0.14);
+    final CountDownLatch started = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    
+    component.setAtomContainer(readMolecule(molfile));
+    
+    final RenderPlan plan = painter.getRenderPlan();
+    
+    // holds the layout back until the event dispatch thread has returned
+    executor.submit(new Callable<Object>()
+    {
+      public Object call() throws Exception
+      {
+        return Boolean.valueOf(started.await(60, TimeUnit.SECONDS));
+      }
+    });
+    
+    component.setExecutor(executor);
+    
+    SwingUtilities.invokeAndWait(new Runnable()
+    {
+      public void run()
+      {
+        component.importSettings(settings);
+        
+        assertSame(plan, painter.getRenderPlan());
+      }
+    });
+    
+    started.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+    
+    SwingUtilities.invokeAndWait(new Runnable()
+    {
+      public void run()
+      {
+        // installs the finished layout, queued before this
+      }
+    });
+    
+    assertNotSame(plan, painter.getRenderPlan());
+    assertSimilarImage((BufferedImage) ImageKit.createRenderedImage(readMolecule(molfile), 300, 300, settings),
+      (BufferedImage) ImageKit.createRenderedImage(painter.getRenderPlan(), 300, 300));
+  }
+  
+  public void testProgressivePainting() throws Exception
+  {
+    File molfile = getMolfiles()[0];
+    SwingPainter component = new SwingPainter();
+    
+    component.setSize(300, 300);
+    component.setProgressive(true);
+    component.setIdleDelay(100);
+    component.setAtomContainer(readMolecule(molfile));
+    component.interact();
+    
+    BufferedImage draft = paintComponent(component);
+    
+    for (int y = 0; y < draft.getHeight(); y++)
+    {
+      for (int x = 0; x < draft.getWidth(); x++)
+      {
+        int rgb = draft.getRGB(x, y) & 0xffffff;
+        
+        assertTrue("pixel (" + x + ", " + y + ") is not a draft pixel", rgb == 0 || rgb == 0xffffff);
+      }
+    }
+    
+    Thread.sleep(500);
+    
+    SwingUtilities.invokeAndWait(new Runnable()
+    {
+      public void run()
+      {
+        // lets the idle timer fire
+      }
+    });
+    
+    assertSimilarImage(render(molfile), paintComponent(component));
+  }
+  
+  public void testScaledComponentPainting() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    Rectangle clip = new Rectangle(70, 50, 120, 140);
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      IMolecule molecule = readMolecule(molfiles[i]);
+      SwingPainter component = new SwingPainter();
+      
+      // too large for a backing image, so painted directly
+      component.setSize(2100, 2100);
+      component.setAtomContainer(molecule);
+      
+      assertSimilarImage(paintScaled(component, 1.5, null).getSubimage(clip.x, clip.y, clip.width, clip.height),
+        paintScaled(component, 1.5, clip).getSubimage(clip.x, clip.y, clip.width, clip.height));
+      
+      // paints drafts until the idle delay has passed
+      component = new SwingPainter();
+      component.setSize(150, 150);
+      component.setProgressive(true);
+      component.setIdleDelay(60000);
+      component.setAtomContainer(molecule);
+      component.interact();
+      
+      assertSimilarImage(paintScaled(component, 1.5, null).getSubimage(clip.x, clip.y, clip.width, clip.height),
+        paintScaled(component, 1.5, clip).getSubimage(clip.x, clip.y, clip.width, clip.height));
+      
+      component.setProgressive(false);
+    }
+  }
+  
+  public void testLevelOfDetail() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+    DefaultGraphicsPainter detailed = new DefaultGraphicsPainter();
+    
+    detailed.setLevelOfDetail(false);
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      IMolecule molecule = readMolecule(molfiles[i]);
+      RenderPlan plan = painter.createRenderPlan(molecule);
+      RenderPlan detailedPlan = detailed.createRenderPlan(molecule);
+      
+      assertMaximumDifference((BufferedImage) ImageKit.createRenderedImage(detailedPlan, 300, 300),
+        (BufferedImage) ImageKit.createRenderedImage(plan, 300, 300), 0);
+      
+      assertFalse(molfiles[i].getName(), isSameImage(
+        (BufferedImage) ImageKit.createRenderedImage(detailedPlan, 40, 40),
+        (BufferedImage) ImageKit.createRenderedImage(plan, 40, 40)));
+    }
+  }
+  
+  public void testScaledLevelOfDetail() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+    DefaultGraphicsPainter detailed = new DefaultGraphicsPainter();
+    
+    detailed.setLevelOfDetail(false);
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      IMolecule molecule = readMolecule(molfiles[i]);
+      
+      painter.setAtomContainer(molecule);
+      detailed.setAtomContainer(molecule);
+      
+      // a scaled context draws the structure where an unscaled one of its size does
+      assertSimilarImage(render(molfiles[i]), paintZoomed(detailed, 150, 2));
+      
+      // small bounds on a context scaled up to full size keep every detail
+      assertMaximumDifference(paintZoomed(detailed, 40, 7.5), paintZoomed(painter, 40, 7.5), 0);
+      
+      // large bounds on a context scaled down to thumbnail size lose them
+      assertFalse(molfiles[i].getName(),
+        isSameImage(paintZoomed(detailed, 300, 0.125), paintZoomed(painter, 300, 0.125)));
+    }
+  }
+  
+  public void testStrainedRingDoubleBond() throws Exception
+  {
+    IMolecule molecule = new Molecule();
+    double[][] points = { { 0, 0.75 }, { 0, -0.75 }, { 1.3, 0 }, { -1.5, 0.75 }, { -1.5, -0.75 } };
+    int[][] bonds = { { 0, 1, 2 }, { 0, 2, 1 }, { 1, 2, 1 }, { 0, 3, 1 }, { 1, 4, 1 }, { 3, 4, 1 } };
+    
+    for (int i = 0; i < points.length; i++)
+    {
+      molecule.addAtom(new Atom("C", new Point2d(points[i][0], points[i][1])));
+    }
+    
+    for (int i = 0; i < bonds.length; i++)
+    {
+      molecule.addBond(new Bond(molecule.getAtom(bonds[i][0]), molecule.getAtom(bonds[i][1]),
+        bonds[i][2] == 2 ? IBond.Order.DOUBLE : IBond.Order.SINGLE));
+    }
+    
+    // the double bond of bicyclo[2.1.0]pent-1(4)-ene has no substituent outside its rings
+    BufferedImage image = (BufferedImage) ImageKit.createRenderedImage(molecule, 300, 300);
+    
+    assertEquals(300, image.getWidth());
+  }
+  
+  public void testStructureCollected() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    List<WeakReference<IMolecule>> references = new ArrayList<WeakReference<IMolecule>>();
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      IMolecule molecule = readMolecule(molfiles[i]);
+      
+      ImageKit.createRenderedImage(molecule, 100, 100);
+      references.add(new WeakReference<IMolecule>(molecule));
+    }
+    
+    for (int i = 0; i < 10 && !isCleared(references); i++)
+    {
+      System.gc();
+      Thread.sleep(50);
+    }
+    
+    assertTrue("a rendered structure is still reachable", isCleared(references));
+  }
+  
+  public void testPNGEncoder() throws Exception
+  {
+    File[] molfiles = getMolfiles();
+    PNGEncoder[] lossless = { new PNGEncoder(6, false), new PNGEncoder(6, true) };
+    PNGEncoder quantized = new PNGEncoder(1, true, 3);
+    
+    for (int i = 0; i < molfiles.length; i++)
+    {
+      BufferedImage image = render(molfiles[i]);
+      
+      for (int j = 0; j < lossless.length; j++)
+      {
+        assertMaximumDifference(image, encodeAndDecode(lossless[j], image), 0);
+      }
+      
+      assertMaximumDifference(image, encodeAndDecode(quantized, image), 4);
+    }
+  }
+  
+  static File[] getMolfiles()
+  {
+    File dir = new File(System.getProperty("molfiles", "molfiles"));
+    File[] result = dir.listFiles();
+    
+    assertNotNull("molfile directory not found: " + dir.getAbsolutePath(), result);
+    
+    return result;
+  }
+  
+  static IMolecule readMolecule(File molfile) throws Exception
+  {
+    MDLReader mdlReader = new MDLReader(new FileReader(molfile));
+    
+    return (IMolecule) mdlReader.read(new Molecule());
+  }
+  
+  /**
+   * Compares two images channel by channel. A difference of one or two levels is
+   * tolerated, since JIT-compiled and interpreted trigonometry may disagree in the
+   * last place and shift an antialiased edge very slightly.
+   */
+  static void assertSimilarImage(BufferedImage expected, BufferedImage actual)
+  {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    
+    for (int x = 0; x < expected.getWidth(); x++)
+    {
+      for (int y = 0; y < expected.getHeight(); y++)
+      {
+        int rgb1 = expected.getRGB(x, y);
+        int rgb2 = actual.getRGB(x, y);
+        
+        for (int shift = 0; shift < 24; shift += 8)
+        {
+          int delta = Math.abs(((rgb1 >> shift) & 0xff) - ((rgb2 >> shift) & 0xff));
+          
+          assertTrue("pixel (" + x + ", " + y + ") differs", delta <= 2);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Paints <code>painter</code> into 300 by 300 pixels through a context scaled by
+   * <code>scale</code>, clipped to <code>clip</code>, given in pixels, if it is not
+   * <code>null</code>.
+   */
+  private BufferedImage paintScaled(GraphicsPainter painter, double scale, Rectangle clip)
+  {
+    BufferedImage result = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = result.createGraphics();
+    
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, 300, 300);
+    g.scale(scale, scale);
+    
+    if (clip != null)
+    {
+      g.clip(new Rectangle2D.Double(clip.x / scale, clip.y / scale, clip.width / scale, clip.height / scale));
+    }
+    
+    painter.paint(g, new Rectangle(300, 300));
+    g.dispose();
+    
+    return result;
+  }
+  
+  /**
+   * Paints the center of <code>component</code> into 300 by 300 pixels through a
+   * context scaled by <code>scale</code>, clipped to <code>clip</code>, given in
+   * pixels, if it is not <code>null</code>.
+   */
+  private BufferedImage paintScaled(SwingPainter component, double scale, Rectangle clip)
+  {
+    BufferedImage result = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = result.createGraphics();
+    
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, 300, 300);
+    
+    if (clip != null)
+    {
+      g.clip(clip);
+    }
+    
+    g.translate(150, 150);
+    g.scale(scale, scale);
+    g.translate(-component.getWidth() / 2.0, -component.getHeight() / 2.0);
+    component.paint(g);
+    g.dispose();
+    
+    return result;
+  }
+  
+  /**
+   * Paints <code>painter</code> into bounds of <code>size</code> by <code>size</code>
+   * through a context scaled by <code>scale</code> and clipped to the image it paints.
+   */
+  private BufferedImage paintZoomed(GraphicsPainter painter, int size, double scale)
+  {
+    int pixels = (int) Math.ceil(size * scale);
+    BufferedImage result = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = result.createGraphics();
+    
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, pixels, pixels);
+    g.clip(new Rectangle(pixels, pixels));
+    g.scale(scale, scale);
+    painter.paint(g, new Rectangle(size, size));
+    g.dispose();
+    
+    return result;
+  }
+  
+  private static Painter.SettingsImporter createSettings(final double lineThickness)
+  {
+    return new Painter.SettingsImporter()
+    {
+      public double getAtomLabelHeight()
+      {
+        return 0.50;
+      }
+      
+      public double getLineThickness()
+      {
+        return lineThickness;
+      }
+      
+      public double getLineSpacing()
+      {
+        return 0.20;
+      }
+      
+      public ColorScheme getColorScheme()
+      {
+        return new DefaultColorScheme();
+      }
+      
+      public boolean getAntialiasing()
+      {
+        return true;
+      }
+    };
+  }
+  
+  private static boolean isCleared(List<? extends Reference<?>> references)
+  {
+    for (int i = 0; i < references.size(); i++)
+    {
+      if (references.get(i).get() != null)
+      {
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  private BufferedImage paintComponent(SwingPainter component)
+  {
+    BufferedImage result = new BufferedImage(component.getWidth(), component.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = result.createGraphics();
+    
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, result.getWidth(), result.getHeight());
+    component.paint(g);
+    g.dispose();
+    
+    return result;
+  }
+  
+  private BufferedImage encodeAndDecode(PNGEncoder encoder, BufferedImage image) throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    
+    encoder.encode(image, out);
+    
+    return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+  }
+  
+  private static boolean isSameImage(BufferedImage a, BufferedImage b)
+  {
+    for (int y = 0; y < a.getHeight(); y++)
+    {
+      for (int x = 0; x < a.getWidth(); x++)
+      {
+        if (a.getRGB(x, y) != b.getRGB(x, y))
+        {
+          return false;
+        }
+      }
+    }
+    
+    return true;
+  }
+  
+  private void assertMaximumDifference(BufferedImage expected, BufferedImage actual, int maximum)
+  {
+    for (int y = 0; y < expected.getHeight(); y++)
+    {
+      for (int x = 0; x < expected.getWidth(); x++)
+      {
+        int a = expected.getRGB(x, y);
+        int b = actual.getRGB(x, y);
+        
+        for (int shift = 0; shift < 24; shift += 8)
+        {
+          assertTrue(Math.abs((a >> shift & 0xff) - (b >> shift & 0xff)) <= maximum);
+        }
+      }
+    }
+  }
+  
+  private BufferedImage render(File molfile) throws Exception
+  {
+    return (BufferedImage) ImageKit.createRenderedImage(readMolecule(molfile), 300, 300);
+  }
 
   private void writePNG(String pathToMolfile, String pathToPNG) throws Exception
   {
@@ -53,4 +928,36 @@ public class ImageTest extends TestCase
     
     ImageKit.writeSVG(mol, 300, 300, pathToSVG);
   }
+  
+  private static final class CountingPainter implements GraphicsPainter
+  {
+    private DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+    private int paintCount = 0;
+    
+    public void paint(Graphics2D g, Rectangle2D bounds)
+    {
+      paintCount++;
+      painter.paint(g, bounds);
+    }
+    
+    public void setAtomContainer(IAtomContainer ac)
+    {
+      painter.setAtomContainer(ac);
+    }
+    
+    public IAtomContainer getAtomContainer()
+    {
+      return painter.getAtomContainer();
+    }
+    
+    public void importSettings(SettingsImporter importer)
+    {
+      painter.importSettings(importer);
+    }
+    
+    public void exportSettings(SettingsExporter exporter)
+    {
+      painter.exportSettings(exporter);
+    }
+  }
 }
@@ -0,0 +1,216 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import javax.vecmath.Point2d;
+
+import org.openscience.cdk.Atom;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.Bond;
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IMolecule;
+
+import net.sf.structure.cdk.paint.DefaultGraphicsPainter;
+import net.sf.structure.cdk.util.ImageKit;
+import net.sf.structure.cdk.util.PNGEncoder;
+import net.sf.structure.cdk.util.RenderCache;
+
+/**
+ * Tests for <code>RenderCache</code>.
+ */
+public class RenderCacheTest extends TestCase
+{
+  public void testHitReturnsCachedImage() throws Exception
+  {
+    RenderCache cache = new RenderCache(1 << 24);
+    IMolecule molecule = ImageTest.readMolecule(getMolfile("caffeine.mol"));
+
+    byte[] first = cache.getImage(molecule, null, "png", 200, 200);
+    byte[] second = cache.getImage(molecule, null, "png", 200, 200);
+
+    assertSame(first, second);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    cache.getImage(molecule, null, "png", 300, 300);
+    cache.getImage(molecule, null, "svg", 200, 200);
+
+    assertEquals(3, cache.getMissCount());
+    assertEquals(3, cache.getImageCount());
+  }
+
+  public void testHashFollowsBondDirection() throws Exception
+  {
+    IMolecule forward = createAcetaldehyde(false);
+    IMolecule reverse = createAcetaldehyde(true);
+
+    assertEquals(RenderCache.createStructureHash(forward), RenderCache.createStructureHash(createAcetaldehyde(false)));
+
+    // the short line of a terminal double bond is drawn on the side given by its direction
+    assertFalse(RenderCache.createStructureHash(forward).equals(RenderCache.createStructureHash(reverse)));
+
+    RenderCache cache = new RenderCache(1 << 24);
+    byte[] first = cache.getImage(forward, null, "png", 200, 200);
+    byte[] second = cache.getImage(reverse, null, "png", 200, 200);
+
+    assertEquals(2, cache.getMissCount());
+    assertFalse(Arrays.equals(first, second));
+    assertTrue(Arrays.equals(second, new RenderCache(1 << 24).getImage(reverse, null, "png", 200, 200)));
+
+    reverse.getBond(1).setOrder(IBond.Order.SINGLE);
+
+    assertFalse(RenderCache.createStructureHash(createAcetaldehyde(true)).equals(
+      RenderCache.createStructureHash(reverse)));
+  }
+
+  public void testEvictsLeastRecentlyUsed() throws Exception
+  {
+    IMolecule caffeine = ImageTest.readMolecule(getMolfile("caffeine.mol"));
+    IMolecule indole = ImageTest.readMolecule(getMolfile("indole.mol"));
+    RenderCache probe = new RenderCache(Long.MAX_VALUE);
+    long size = probe.getImage(caffeine, null, "png", 200, 200).length +
+      probe.getImage(indole, null, "png", 200, 200).length;
+    RenderCache cache = new RenderCache(size);
+
+    cache.getImage(caffeine, null, "png", 200, 200);
+    cache.getImage(indole, null, "png", 200, 200);
+    cache.getImage(caffeine, null, "png", 200, 200);
+    cache.getImage(caffeine, null, "png", 201, 201);
+
+    assertTrue(cache.getSize() <= size);
+    assertTrue(cache.getEvictionCount() > 0);
+
+    // indole was least recently used, so it must have been the first to go
+    long misses = cache.getMissCount();
+
+    cache.getImage(indole, null, "png", 200, 200);
+
+    assertEquals(misses + 1, cache.getMissCount());
+  }
+
+  public void testFormatIgnoresCase() throws Exception
+  {
+    RenderCache cache = new RenderCache(1 << 24);
+    IMolecule molecule = ImageTest.readMolecule(getMolfile("caffeine.mol"));
+
+    byte[] first = cache.getImage(molecule, null, "png", 200, 200);
+
+    assertSame(first, cache.getImage(molecule, null, "PNG", 200, 200));
+    assertEquals(1, cache.getMissCount());
+  }
+
+  public void testKeyIncludesPNGEncoder() throws Exception
+  {
+    RenderCache cache = new RenderCache(1 << 24);
+    IMolecule molecule = ImageTest.readMolecule(getMolfile("caffeine.mol"));
+    PNGEncoder encoder = ImageKit.getPNGEncoder();
+
+    try
+    {
+      ImageKit.setPNGEncoder(null);
+      cache.getImage(molecule, null, "png", 200, 200);
+      cache.getImage(molecule, null, "svg", 200, 200);
+
+      ImageKit.setPNGEncoder(new PNGEncoder(9, true));
+
+      byte[] encoded = cache.getImage(molecule, null, "png", 200, 200);
+
+      assertEquals(3, cache.getMissCount());
+
+      // an encoder with the same settings writes the same bytes
+      ImageKit.setPNGEncoder(new PNGEncoder(9, true));
+      assertSame(encoded, cache.getImage(molecule, null, "png", 200, 200));
+
+      ImageKit.setPNGEncoder(new PNGEncoder(9, true, 4));
+      cache.getImage(molecule, null, "png", 200, 200);
+      cache.getImage(molecule, null, "svg", 200, 200);
+
+      assertEquals(4, cache.getMissCount());
+    }
+
+    finally
+    {
+      ImageKit.setPNGEncoder(encoder);
+    }
+  }
+
+  public void testHashIncludesPerceivedAromaticity() throws Exception
+  {
+    IMolecule molecule = ImageTest.readMolecule(getMolfile("indole.mol"));
+    String hash = RenderCache.createStructureHash(molecule);
+
+    // flags are perceived again from the bond orders, so they do not change the drawing
+    molecule.getAtom(0).setFlag(CDKConstants.ISAROMATIC, !molecule.getAtom(0).getFlag(CDKConstants.ISAROMATIC));
+    assertEquals(hash, RenderCache.createStructureHash(molecule));
+
+    molecule.setProperty(DefaultGraphicsPainter.AROMATICITY_PERCEIVED, Boolean.TRUE);
+
+    String perceived = RenderCache.createStructureHash(molecule);
+
+    assertFalse(hash.equals(perceived));
+
+    molecule.getAtom(0).setFlag(CDKConstants.ISAROMATIC, !molecule.getAtom(0).getFlag(CDKConstants.ISAROMATIC));
+    assertFalse(perceived.equals(RenderCache.createStructureHash(molecule)));
+  }
+
+  private File getMolfile(String name)
+  {
+    return new File(System.getProperty("molfiles", "molfiles"), name);
+  }
+
+  /**
+   * Creates an acetaldehyde skeleton whose carbonyl bond runs from the carbon, which has
+   * two neighbors, to the oxygen, or the other way if <code>reverse</code> is set.
+   */
+  private IMolecule createAcetaldehyde(boolean reverse)
+  {
+    IMolecule result = new Molecule();
+    IAtom methyl = new Atom("C", new Point2d(0, 0));
+    IAtom carbonyl = new Atom("C", new Point2d(1.3, 0.75));
+    IAtom oxygen = new Atom("O", new Point2d(2.6, 0));
+
+    result.addAtom(methyl);
+    result.addAtom(carbonyl);
+    result.addAtom(oxygen);
+    result.addBond(new Bond(methyl, carbonyl, IBond.Order.SINGLE));
+
+    if (reverse)
+    {
+      result.addBond(new Bond(oxygen, carbonyl, IBond.Order.DOUBLE));
+    }
+
+    else
+    {
+      result.addBond(new Bond(carbonyl, oxygen, IBond.Order.DOUBLE));
+    }
+
+    return result;
+  }
+}
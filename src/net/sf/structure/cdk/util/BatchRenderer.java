@@ -0,0 +1,509 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.MDLReader;
+
+import net.sf.structure.cdk.paint.Painter;
+import net.sf.structure.cdk.paint.RenderPlan;
+
+/**
+ * <p>
+ * Renders many structures to image files in parallel. Records are streamed from an
+ * SD file or a directory of molfiles and handed to an <code>ExecutorService</code>,
+ * each task laying out, rendering and writing one structure.
+ * </p>
+ *
+ * <p>
+ * At most <code>capacity</code> records are read ahead of the workers; once that many
+ * are queued or in progress, reading blocks until a worker finishes. The reading
+ * thread only splits an SD file into records at their <code>$$$$</code> delimiters;
+ * each record is parsed by the task that renders it. A record that cannot be parsed,
+ * rendered or written is therefore reported to the <code>Listener</code>, if any, and
+ * counted as failed, and the batch carries on with the next record.
+ * </p>
+ *
+ * <p>
+ * The executor belongs to the caller, who chooses its kind and size and shuts it down.
+ * </p>
+ */
+public class BatchRenderer
+{
+  private ExecutorService executor;
+  private int capacity;
+  private Semaphore permits;
+  private String format;
+  private int width;
+  private int height;
+  private Painter.SettingsImporter settings;
+  private Listener listener;
+  private AtomicLong submitted;
+  private AtomicLong rendered;
+  private AtomicLong failed;
+  private volatile long startTime;
+  private volatile long endTime;
+
+  /**
+   * Constructs a <code>BatchRenderer</code> that runs its work on <code>executor</code>,
+   * with at most <code>capacity</code> records queued or in progress at any time.
+   * Output defaults to 300x300 PNG images with default rendering settings.
+   *
+   * @param executor the executor that renders and writes records
+   * @param capacity the maximum number of records queued or in progress
+   */
+  public BatchRenderer(ExecutorService executor, int capacity)
+  {
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+
+    this.executor = executor;
+    this.capacity = capacity;
+    this.permits = new Semaphore(capacity);
+    this.format = "png";
+    this.width = 300;
+    this.height = 300;
+    this.settings = null;
+    this.listener = null;
+    this.submitted = new AtomicLong();
+    this.rendered = new AtomicLong();
+    this.failed = new AtomicLong();
+    this.startTime = 0;
+    this.endTime = 0;
+  }
+
+  /**
+   * Sets the output format, one of <code>"png"</code>, <code>"jpg"</code> or
+   * <code>"svg"</code>.
+   *
+   * @param format the output format
+   */
+  public void setFormat(String format)
+  {
+    if (!"png".equals(format) && !"jpg".equals(format) && !"svg".equals(format))
+    {
+      throw new IllegalArgumentException("Unsupported format: " + format);
+    }
+
+    this.format = format;
+  }
+
+  /**
+   * Sets the dimensions, in pixels, of the output images.
+   *
+   * @param width the width of the output images
+   * @param height the height of the output images
+   */
+  public void setSize(int width, int height)
+  {
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Sets the rendering settings.
+   *
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   */
+  public void setSettings(Painter.SettingsImporter settings)
+  {
+    this.settings = settings;
+  }
+
+  /**
+   * Sets the <code>Listener</code> notified as records complete.
+   *
+   * @param listener the listener, or <code>null</code> for none
+   */
+  public void setListener(Listener listener)
+  {
+    this.listener = listener;
+  }
+
+  /**
+   * Renders every file in <code>directory</code> as a molfile, writing one image per
+   * file into <code>outputDirectory</code>. Returns once every record has completed.
+   *
+   * @param directory the directory containing molfiles
+   * @param outputDirectory the directory that will receive the images
+   * @throws IOException if <code>directory</code> cannot be listed
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  public void renderDirectory(File directory, File outputDirectory) throws IOException, InterruptedException
+  {
+    File[] files = directory.listFiles();
+
+    if (files == null)
+    {
+      throw new IOException("Not a directory: " + directory);
+    }
+
+    Arrays.sort(files);
+    outputDirectory.mkdirs();
+    begin();
+
+    try
+    {
+      for (int i = 0; i < files.length; i++)
+      {
+        if (files[i].isFile())
+        {
+          submit(new MolfileTask(i, files[i], getOutputFile(outputDirectory, getBaseName(files[i]))));
+        }
+      }
+    }
+
+    finally
+    {
+      end();
+    }
+  }
+
+  /**
+   * Renders every record of <code>sdFile</code>, writing one image per record into
+   * <code>outputDirectory</code>. Records are named after the SD file and their
+   * one-based position in it. Returns once every record has completed.
+   *
+   * @param sdFile the SD file
+   * @param outputDirectory the directory that will receive the images
+   * @throws IOException if <code>sdFile</code> cannot be read
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  public void renderSDFile(File sdFile, File outputDirectory) throws IOException, InterruptedException
+  {
+    BufferedReader reader = new BufferedReader(new FileReader(sdFile));
+    String baseName = getBaseName(sdFile);
+
+    outputDirectory.mkdirs();
+    begin();
+
+    try
+    {
+      StringBuilder record = new StringBuilder();
+      int index = 0;
+
+      for (String line = reader.readLine(); line != null; line = reader.readLine())
+      {
+        if (line.startsWith("$$$$"))
+        {
+          submitRecord(index++, baseName, record.toString(), outputDirectory);
+          record.setLength(0);
+        }
+
+        else
+        {
+          record.append(line).append('\n');
+        }
+      }
+
+      // the delimiter after the last record is optional
+      if (record.toString().trim().length() > 0)
+      {
+        submitRecord(index, baseName, record.toString(), outputDirectory);
+      }
+    }
+
+    finally
+    {
+      reader.close();
+      end();
+    }
+  }
+
+  /**
+   * Returns the number of records handed to the workers so far.
+   *
+   * @return the number of records submitted
+   */
+  public long getSubmittedCount()
+  {
+    return submitted.get();
+  }
+
+  /**
+   * Returns the number of records rendered and written successfully.
+   *
+   * @return the number of records rendered
+   */
+  public long getRenderedCount()
+  {
+    return rendered.get();
+  }
+
+  /**
+   * Returns the number of records that could not be read, rendered or written.
+   *
+   * @return the number of failed records
+   */
+  public long getFailedCount()
+  {
+    return failed.get();
+  }
+
+  /**
+   * Returns the number of records completed per second, successfully or not,
+   * over the current or most recent batch.
+   *
+   * @return the throughput in records per second
+   */
+  public double getThroughput()
+  {
+    long end = endTime == 0 ? System.nanoTime() : endTime;
+    double seconds = (end - startTime) / 1.0e9;
+
+    if (startTime == 0 || seconds <= 0)
+    {
+      return 0;
+    }
+
+    return (rendered.get() + failed.get()) / seconds;
+  }
+
+  private void begin()
+  {
+    submitted.set(0);
+    rendered.set(0);
+    failed.set(0);
+    startTime = System.nanoTime();
+    endTime = 0;
+  }
+
+  private void end() throws InterruptedException
+  {
+    // all permits are free once the last task has finished
+    permits.acquire(capacity);
+    permits.release(capacity);
+
+    endTime = System.nanoTime();
+  }
+
+  private void submit(Task task) throws InterruptedException
+  {
+    permits.acquire();
+
+    try
+    {
+      executor.execute(task);
+      submitted.incrementAndGet();
+    }
+
+    catch (RuntimeException e)
+    {
+      permits.release();
+
+      throw e;
+    }
+  }
+
+  private void submitRecord(int index, String baseName, String record, File outputDirectory) throws InterruptedException
+  {
+    String name = baseName + "-" + (index + 1);
+
+    submit(new RecordTask(index, name, record, getOutputFile(outputDirectory, name)));
+  }
+
+  private void write(RenderPlan plan, File file) throws IOException
+  {
+    String path = file.getPath();
+
+    if ("svg".equals(format))
+    {
+      ImageKit.writeSVG(plan, width, height, path);
+    }
+
+    else if ("jpg".equals(format))
+    {
+      ImageKit.writeJPG(plan, width, height, path);
+    }
+
+    else
+    {
+      ImageKit.writePNG(plan, width, height, path);
+    }
+  }
+
+  private File getOutputFile(File outputDirectory, String name)
+  {
+    return new File(outputDirectory, name + "." + format);
+  }
+
+  private String getBaseName(File file)
+  {
+    String name = file.getName();
+    int dot = name.lastIndexOf('.');
+
+    return dot > 0 ? name.substring(0, dot) : name;
+  }
+
+  /**
+   * A receiver of per-record results. Methods are called from worker threads, so
+   * implementations must be thread-safe.
+   */
+  public interface Listener
+  {
+    /**
+     * Called when a record has been rendered and written.
+     *
+     * @param index the zero-based position of the record in its source
+     * @param name the name of the record
+     * @param output the file written
+     */
+    public void recordRendered(int index, String name, File output);
+
+    /**
+     * Called when a record could not be read, rendered or written.
+     *
+     * @param index the zero-based position of the record in its source
+     * @param name the name of the record
+     * @param error the cause of the failure
+     */
+    public void recordFailed(int index, String name, Exception error);
+  }
+
+  private abstract class Task implements Runnable
+  {
+    private int index;
+    private String name;
+    private File output;
+
+    private Task(int index, String name, File output)
+    {
+      this.index = index;
+      this.name = name;
+      this.output = output;
+    }
+
+    protected abstract IAtomContainer getStructure() throws Exception;
+
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run()
+    {
+      try
+      {
+        render();
+      }
+
+      finally
+      {
+        permits.release();
+      }
+    }
+
+    private void render()
+    {
+      Exception error = null;
+
+      try
+      {
+        write(ImageKit.createRenderPlan(getStructure(), settings), output);
+        rendered.incrementAndGet();
+      }
+
+      catch (Exception e)
+      {
+        error = e;
+        failed.incrementAndGet();
+      }
+
+      if (listener == null)
+      {
+        return;
+      }
+
+      if (error == null)
+      {
+        listener.recordRendered(index, name, output);
+      }
+
+      else
+      {
+        listener.recordFailed(index, name, error);
+      }
+    }
+  }
+
+  private static IAtomContainer read(Reader reader) throws Exception
+  {
+    try
+    {
+      MDLReader mdlReader = new MDLReader(reader);
+
+      return (IAtomContainer) mdlReader.read(new Molecule());
+    }
+
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  private class RecordTask extends Task
+  {
+    private String record;
+
+    private RecordTask(int index, String name, String record, File output)
+    {
+      super(index, name, output);
+
+      this.record = record;
+    }
+
+    protected IAtomContainer getStructure() throws Exception
+    {
+      return read(new StringReader(record));
+    }
+  }
+
+  private class MolfileTask extends Task
+  {
+    private File molfile;
+
+    private MolfileTask(int index, File molfile, File output)
+    {
+      super(index, getBaseName(molfile), output);
+
+      this.molfile = molfile;
+    }
+
+    protected IAtomContainer getStructure() throws Exception
+    {
+      return read(new FileReader(molfile));
+    }
+  }
+}
@@ -31,6 +31,13 @@ import java.awt.geom.Line2D;
  * <code>GeometryKit is a collection of static utility methods for geometrical
  * calculation.
  * 
+ * <p>
+ * Besides methods on <code>Line2D</code> and <code>Point2D</code>, it offers methods on
+ * lines stored as four consecutive coordinates (x1, y1, x2, y2) in a
+ * <code>double[]</code> at a given offset. These use vector arithmetic only, without
+ * trigonometry, and allocate nothing, so they suit layout of large structures.
+ * </p>
+ * 
  * @author Richard Apodaca
  */
 public final class GeometryKit
@@ -70,9 +77,10 @@ public final class GeometryKit
    */
   public static double getDistance(double x1, double y1, double x2, double y2)
   {
-    double result = Math.sqrt(Math.pow(x1 - x2, 2) + Math.pow(y1 - y2, 2));
+    double dx = x1 - x2;
+    double dy = y1 - y2;
 
-    return result;
+    return Math.sqrt(dx * dx + dy * dy);
   }
 
   /**
@@ -132,32 +140,188 @@ public final class GeometryKit
    */
   public static double getDistance(Line2D line, Point2D point)
   {
-    double angle =
-        getAngle(line.getX1(), line.getY1(), point.getX(), point.getY()) -
-        getAngle(line);
+    return getDistance(line, point.getX(), point.getY());
+  }
+  
+  public static double getDistance(Line2D line, double xIn, double yIn)
+  {
+    return getSignedDistance(line.getX1(), line.getY1(), line.getX2(), line.getY2(), xIn, yIn);
+  }
+  
+  /**
+   * Returns the signed distance between the point (x, y) and the line through
+   * (x1, y1) and (x2, y2), with the same sign convention as
+   * {@link #getDistance(Line2D, Point2D)}.
+   *
+   * @param x1 the x-coordinate of the first point of the line
+   * @param y1 the y-coordinate of the first point of the line
+   * @param x2 the x-coordinate of the second point of the line
+   * @param y2 the y-coordinate of the second point of the line
+   * @param x the x-coordinate of the point
+   * @param y the y-coordinate of the point
+   *
+   * @return the signed distance between the line and the point
+   */
+  public static double getSignedDistance(double x1, double y1, double x2, double y2, double x, double y)
+  {
+    return getCrossProduct(x1, y1, x2, y2, x, y) / getDistance(x1, y1, x2, y2);
+  }
+  
+  /**
+   * Returns the signed distance between the point (x, y) and the line stored at
+   * <code>offset</code> in <code>lines</code>.
+   *
+   * @param lines an array of line coordinates
+   * @param offset the index of the x1 coordinate of the line
+   * @param x the x-coordinate of the point
+   * @param y the y-coordinate of the point
+   *
+   * @return the signed distance between the line and the point
+   */
+  public static double getSignedDistance(double[] lines, int offset, double x, double y)
+  {
+    return getSignedDistance(lines[offset], lines[offset + 1], lines[offset + 2], lines[offset + 3], x, y);
+  }
+  
+  /**
+   * Returns <code>true</code> if the point (x, y) lies "above" the line stored at
+   * <code>offset</code> in <code>lines</code>, as for {@link #pointAbove(Line2D, double, double)}.
+   *
+   * @param lines an array of line coordinates
+   * @param offset the index of the x1 coordinate of the line
+   * @param x the x-coordinate of the point
+   * @param y the y-coordinate of the point
+   *
+   * @return <code>true</code> if the point lies above the line
+   */
+  public static boolean pointAbove(double[] lines, int offset, double x, double y)
+  {
+    return getCrossProduct(lines[offset], lines[offset + 1], lines[offset + 2], lines[offset + 3], x, y) < 0;
+  }
+  
+  /**
+   * Translates the line stored at <code>offset</code> in <code>lines</code> along its
+   * perpendicular by the specified signed distance, as for {@link #translate(Line2D, double)}.
+   *
+   * @param lines an array of line coordinates
+   * @param offset the index of the x1 coordinate of the line
+   * @param distance the signed translation distance
+   */
+  public static void translate(double[] lines, int offset, double distance)
+  {
+    double x = lines[offset + 2] - lines[offset];
+    double y = lines[offset + 3] - lines[offset + 1];
+    double length = Math.sqrt(x * x + y * y);
+    double dx = (distance * y) / length;
+    double dy = -(distance * x) / length;
+
+    lines[offset] += dx;
+    lines[offset + 1] += dy;
+    lines[offset + 2] += dx;
+    lines[offset + 3] += dy;
+  }
+  
+  /**
+   * Shortens the line stored at <code>offset</code> in <code>lines</code> symmetrically
+   * about its center, as for {@link #shortenToCenter(Line2D, double)}.
+   *
+   * @param lines an array of line coordinates
+   * @param offset the index of the x1 coordinate of the line
+   * @param percent the fraction of the length to remove
+   */
+  public static void shortenToCenter(double[] lines, int offset, double percent)
+  {
+    double x1 = lines[offset];
+    double y1 = lines[offset + 1];
+    double x2 = lines[offset + 2];
+    double y2 = lines[offset + 3];
+
+    lines[offset] = x1 + 0.5 * percent * (x2 - x1);
+    lines[offset + 1] = y1 + 0.5 * percent * (y2 - y1);
+    lines[offset + 2] = x2 + 0.5 * percent * (x1 - x2);
+    lines[offset + 3] = y2 + 0.5 * percent * (y1 - y2);
+  }
+  
+  /**
+   * Trims the line stored at <code>offset</code> in <code>lines</code> to the edge of
+   * <code>bounds</code>, as for {@link #trimLine(Line2D, Rectangle2D)}.
+   *
+   * @param lines an array of line coordinates
+   * @param offset the index of the x1 coordinate of the line
+   * @param bounds the rectangle to trim to
+   */
+  public static void trimLine(double[] lines, int offset, Rectangle2D bounds)
+  {
+    double x1 = lines[offset];
+    double y1 = lines[offset + 1];
+    double x2 = lines[offset + 2];
+    double y2 = lines[offset + 3];
+    boolean containsSource = bounds.contains(x1, y1);
+    boolean containsTarget = bounds.contains(x2, y2);
+
+    if (containsSource == containsTarget)
+    {
+      return;
+    }
 
-    // find the line-point distance
-    double distance =
-        getDistance(line.getX1(), line.getY1(), point.getX(), point.getY());
+    if (containsSource)
+    {
+      double t = getExitFraction(x1, y1, x2, y2, bounds);
 
-    double y = distance * Math.sin(angle);
+      lines[offset] = x1 + t * (x2 - x1);
+      lines[offset + 1] = y1 + t * (y2 - y1);
+    }
 
-    return y;
+    else
+    {
+      double t = getExitFraction(x2, y2, x1, y1, bounds);
+
+      lines[offset + 2] = x2 + t * (x1 - x2);
+      lines[offset + 3] = y2 + t * (y1 - y2);
+    }
   }
   
-  public static double getDistance(Line2D line, double xIn, double yIn)
+  /**
+   * Returns the z-component of the cross product of (x2 - x1, y2 - y1) and
+   * (x - x1, y - y1).
+   */
+  private static double getCrossProduct(double x1, double y1, double x2, double y2, double x, double y)
   {
-    double angle =
-      getAngle(line.getX1(), line.getY1(), xIn, yIn) -
-      getAngle(line);
+    return (x2 - x1) * (y - y1) - (y2 - y1) * (x - x1);
+  }
+  
+  /**
+   * Returns the fraction of the way from (x1, y1), inside <code>bounds</code>, to
+   * (x2, y2) at which the segment between them leaves <code>bounds</code>.
+   */
+  private static double getExitFraction(double x1, double y1, double x2, double y2, Rectangle2D bounds)
+  {
+    double dx = x2 - x1;
+    double dy = y2 - y1;
+    double tx = Double.POSITIVE_INFINITY;
+    double ty = Double.POSITIVE_INFINITY;
 
-  // find the line-point distance
-  double distance =
-      getDistance(line.getX1(), line.getY1(), xIn, yIn);
+    if (dx > 0)
+    {
+      tx = (bounds.getMaxX() - x1) / dx;
+    }
 
-  double y = distance * Math.sin(angle);
+    else if (dx < 0)
+    {
+      tx = (bounds.getMinX() - x1) / dx;
+    }
 
-  return y;
+    if (dy > 0)
+    {
+      ty = (bounds.getMaxY() - y1) / dy;
+    }
+
+    else if (dy < 0)
+    {
+      ty = (bounds.getMinY() - y1) / dy;
+    }
+
+    return Math.min(tx, ty);
   }
 
   /**
@@ -229,92 +393,30 @@ public final class GeometryKit
 
   public static void trimLine(Line2D line, Rectangle2D bounds)
   {
-    Point2D source = null;
-    Point2D target = null;
-    boolean reverse = false;
-
-    if (bounds.contains(line.getP1()) && bounds.contains(line.getP2()))
+    double x1 = line.getX1();
+    double y1 = line.getY1();
+    double x2 = line.getX2();
+    double y2 = line.getY2();
+    boolean containsSource = bounds.contains(x1, y1);
+    boolean containsTarget = bounds.contains(x2, y2);
+
+    if (containsSource == containsTarget)
     {
       return;
     }
 
-    if (bounds.contains(line.getP1()))
+    if (containsSource)
     {
-      source = line.getP1();
-      target = line.getP2();
-    }
+      double t = getExitFraction(x1, y1, x2, y2, bounds);
 
-    else if (bounds.contains(line.getP2()))
-    {
-      source = line.getP2();
-      target = line.getP1();
-      reverse = true;
+      line.setLine(x1 + t * (x2 - x1), y1 + t * (y2 - y1), x2, y2);
     }
 
     else
     {
-      return;
-    }
-
-    double x1 = source.getX();
-    double y1 = source.getY();
-    double x2 = target.getX();
-    double y2 = target.getY();
-
-    double dx = x2 - x1; // x-distance between source and target
-    double dy = y1 - y2; // y-distance between source and target
-
-    double angle = getAngle(x1, y1, x2, y2);
-
-    double left = bounds.getX();
-    double right = left + bounds.getWidth();
-    double top = bounds.getY();
-    double bottom = top + bounds.getHeight();
-
-    double angleBound1 = getAngle(x1, y1, right, top);
-    double angleBound2 = getAngle(x1, y1, right, bottom);
-    double angleBound3 = getAngle(x1, y1, left, bottom);
-    double angleBound4 = getAngle(x1, y1, left, top);
-
-    double x = 0.0;
-    double y = 0.0;
-
-    // right edge of bounds
-    if ((angle >= angleBound1) || (angle <= angleBound2))
-    {
-      x = right;
-      y = y1 - (x - x1) * (dy / dx);
-    }
-
-    // bottom edge of bounds
-    else if ((angle > angleBound2) && (angle < angleBound3))
-    {
-      y = bottom;
-      x = x1 + (y1 - y) * (dx / dy);
-    }
+      double t = getExitFraction(x2, y2, x1, y1, bounds);
 
-    // left edge of bounds
-    else if ((angle >= angleBound3) && (angle <= angleBound4))
-    {
-      x = left;
-      y = y1 - (x - x1) * (dy / dx);
-    }
-
-    // top edge of bounds
-    else if ((angle > angleBound4) && (angle < angleBound1))
-    {
-      y = top;
-      x = x1 + (y1 - y) * (dx / dy);
-    }
-
-    if (reverse)
-    {
-      line.setLine(x2, y2, x, y);
-    }
-
-    else
-    {
-      line.setLine(x, y, x2, y2);
+      line.setLine(x1, y1, x2 + t * (x1 - x2), y2 + t * (y1 - y2));
     }
   }
 }
@@ -0,0 +1,368 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.sf.structure.cdk.paint.RenderPlan;
+import net.sf.structure.cdk.paint.SVGWriter;
+
+/**
+ * <p>
+ * Renders many structures into the cells of a single image, row by row. Every
+ * structure is drawn at the same bond length: the largest at which each structure
+ * fits its cell. Structures without bonds are fitted to their cell, but drawn no
+ * larger than any other structure.
+ * </p>
+ *
+ * <p>
+ * Raster images are painted cell by cell straight into the shared image, on an
+ * <code>ExecutorService</code> if one is set, and encoded once. SVG documents contain
+ * all cells. The executor belongs to the caller, who chooses its kind and size and
+ * shuts it down.
+ * </p>
+ */
+public class GridRenderer
+{
+  private int columns;
+  private int cellWidth;
+  private int cellHeight;
+  private int padding;
+  private ExecutorService executor;
+
+  /**
+   * Constructs a <code>GridRenderer</code> with <code>columns</code> cells per row,
+   * each <code>cellWidth</code> by <code>cellHeight</code> pixels. Cells are painted
+   * on the calling thread until an executor is set.
+   *
+   * @param columns the number of cells per row
+   * @param cellWidth the width, in pixels, of each cell
+   * @param cellHeight the height, in pixels, of each cell
+   */
+  public GridRenderer(int columns, int cellWidth, int cellHeight)
+  {
+    if (columns < 1)
+    {
+      throw new IllegalArgumentException("Column count must be positive: " + columns);
+    }
+
+    this.columns = columns;
+    this.cellWidth = cellWidth;
+    this.cellHeight = cellHeight;
+    this.padding = 0;
+    this.executor = null;
+  }
+
+  /**
+   * Sets the margin, in pixels, left empty on each side of every cell.
+   *
+   * @param padding the margin around each structure
+   */
+  public void setPadding(int padding)
+  {
+    this.padding = padding;
+  }
+
+  /**
+   * Sets the executor on which cells are painted.
+   *
+   * @param executor the executor, or <code>null</code> to paint on the calling thread
+   */
+  public void setExecutor(ExecutorService executor)
+  {
+    this.executor = executor;
+  }
+
+  /**
+   * Returns the width, in pixels, of a grid holding <code>count</code> structures.
+   *
+   * @param count the number of structures
+   * @return the width of the grid
+   */
+  public int getWidth(int count)
+  {
+    return Math.min(Math.max(count, 1), columns) * cellWidth;
+  }
+
+  /**
+   * Returns the height, in pixels, of a grid holding <code>count</code> structures.
+   *
+   * @param count the number of structures
+   * @return the height of the grid
+   */
+  public int getHeight(int count)
+  {
+    return Math.max((count + columns - 1) / columns, 1) * cellHeight;
+  }
+
+  /**
+   * Returns the rectangle, in pixels, into which each of <code>plans</code> is
+   * painted, such that all are drawn at the same bond length.
+   *
+   * @param plans the structures of the grid
+   * @return the bounds of each structure
+   */
+  public Rectangle2D[] getBounds(List<RenderPlan> plans)
+  {
+    double[] fitScales = new double[plans.size()];
+    double bondLength = Double.POSITIVE_INFINITY;
+    double maximumScale = 0;
+
+    for (int i = 0; i < fitScales.length; i++)
+    {
+      RenderPlan plan = plans.get(i);
+      Rectangle2D perimeter = plan.getBounds();
+
+      fitScales[i] = Math.min((cellWidth - 2 * padding) / perimeter.getWidth(),
+        (cellHeight - 2 * padding) / perimeter.getHeight());
+
+      if (plan.getAtomPairLength() > 0)
+      {
+        bondLength = Math.min(bondLength, fitScales[i] * plan.getAtomPairLength());
+      }
+    }
+
+    for (int i = 0; i < fitScales.length; i++)
+    {
+      if (plans.get(i).getAtomPairLength() > 0)
+      {
+        maximumScale = Math.max(maximumScale, bondLength / plans.get(i).getAtomPairLength());
+      }
+    }
+
+    Rectangle2D[] result = new Rectangle2D[fitScales.length];
+
+    for (int i = 0; i < result.length; i++)
+    {
+      RenderPlan plan = plans.get(i);
+      Rectangle2D perimeter = plan.getBounds();
+      double scale = fitScales[i];
+
+      if (plan.getAtomPairLength() > 0)
+      {
+        scale = bondLength / plan.getAtomPairLength();
+      }
+
+      else if (maximumScale > 0)
+      {
+        scale = Math.min(scale, maximumScale);
+      }
+
+      double width = perimeter.getWidth() * scale;
+      double height = perimeter.getHeight() * scale;
+
+      result[i] = new Rectangle2D.Double(
+        (i % columns) * cellWidth + 0.5 * (cellWidth - width),
+        (i / columns) * cellHeight + 0.5 * (cellHeight - height), width, height);
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates an image of the grid of <code>plans</code> on a white background.
+   *
+   * @param plans the structures of the grid
+   * @return a new image of the grid
+   * @throws InterruptedException if interrupted while waiting for the executor
+   */
+  public BufferedImage createImage(List<RenderPlan> plans) throws InterruptedException
+  {
+    BufferedImage image =
+      new BufferedImage(getWidth(plans.size()), getHeight(plans.size()), BufferedImage.TYPE_INT_RGB);
+
+    paintImage(plans, image);
+
+    return image;
+  }
+
+  /**
+   * Writes the grid of <code>plans</code> as an image of the specified format to
+   * <code>out</code>. PNG and JPG images have a white background and are encoded as
+   * <code>ImageKit</code> encodes them. The stream is flushed but not closed.
+   *
+   * @param plans the structures of the grid
+   * @param format the image format, one of <code>"png"</code>, <code>"jpg"</code> or <code>"svg"</code>
+   * @param out the stream to write to
+   * @throws IOException if the image cannot be written
+   * @throws InterruptedException if interrupted while waiting for the executor
+   */
+  public void write(List<RenderPlan> plans, String format, OutputStream out) throws IOException, InterruptedException
+  {
+    int width = getWidth(plans.size());
+    int height = getHeight(plans.size());
+
+    if ("svg".equals(format))
+    {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+
+      new SVGWriter(writer).write(plans.toArray(new RenderPlan[plans.size()]), getBounds(plans), width, height);
+      writer.flush();
+    }
+
+    else if ("png".equals(format) || "jpg".equals(format))
+    {
+      ImagePool pool = ImageKit.getImagePool();
+      BufferedImage image = pool == null
+        ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+        : pool.acquire(width, height, BufferedImage.TYPE_INT_RGB);
+
+      try
+      {
+        paintImage(plans, image);
+        ImageKit.writeImage(image, format, out);
+      }
+
+      finally
+      {
+        if (pool != null)
+        {
+          pool.release(image);
+        }
+      }
+    }
+
+    else
+    {
+      throw new IllegalArgumentException("Unsupported format: " + format);
+    }
+  }
+
+  /**
+   * Clears <code>image</code> to white and paints each plan into its cell, each cell
+   * through its own subimage so that no structure can paint over another.
+   */
+  private void paintImage(List<RenderPlan> plans, BufferedImage image) throws InterruptedException
+  {
+    Rectangle2D[] bounds = getBounds(plans);
+    Graphics2D g = image.createGraphics();
+
+    try
+    {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, image.getWidth(), image.getHeight());
+    }
+
+    finally
+    {
+      g.dispose();
+    }
+
+    List<Future<?>> cells = new ArrayList<Future<?>>(plans.size());
+
+    for (int i = 0; i < bounds.length; i++)
+    {
+      int x = (i % columns) * cellWidth;
+      int y = (i / columns) * cellHeight;
+      Cell cell = new Cell(plans.get(i), bounds[i].getX() - x, bounds[i].getY() - y,
+        bounds[i].getWidth(), bounds[i].getHeight(), image.getSubimage(x, y, cellWidth, cellHeight));
+
+      if (executor == null)
+      {
+        cell.run();
+      }
+
+      else
+      {
+        cells.add(executor.submit(cell));
+      }
+    }
+
+    try
+    {
+      for (int i = 0; i < cells.size(); i++)
+      {
+        cells.get(i).get();
+      }
+    }
+
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof Error)
+      {
+        throw (Error) e.getCause();
+      }
+
+      throw (RuntimeException) e.getCause();
+    }
+
+    finally
+    {
+      for (int i = 0; i < cells.size(); i++)
+      {
+        cells.get(i).cancel(true);
+      }
+    }
+  }
+
+  private static final class Cell implements Runnable
+  {
+    private RenderPlan plan;
+    private double x;
+    private double y;
+    private Rectangle2D bounds;
+    private BufferedImage image;
+
+    private Cell(RenderPlan plan, double x, double y, double width, double height, BufferedImage image)
+    {
+      this.plan = plan;
+      this.x = x;
+      this.y = y;
+      this.bounds = new Rectangle2D.Double(0, 0, width, height);
+      this.image = image;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run()
+    {
+      Graphics2D g = image.createGraphics();
+
+      try
+      {
+        // RenderPlan paints at the origin of g, whatever the origin of its bounds
+        g.translate(x, y);
+        plan.paint(g, bounds);
+      }
+
+      finally
+      {
+        g.dispose();
+      }
+    }
+  }
+}
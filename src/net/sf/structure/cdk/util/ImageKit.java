@@ -24,69 +24,219 @@ package net.sf.structure.cdk.util;
 
 import java.awt.image.RenderedImage;
 import java.awt.Rectangle;
-import java.awt.Dimension;
-import java.io.File;
+import java.awt.Graphics2D;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.Writer;
-import java.io.OutputStreamWriter;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
 import java.awt.image.BufferedImage;
 import java.awt.Color;
 import javax.imageio.ImageIO;
-
-import org.apache.batik.svggen.SVGGraphics2D;
-import org.apache.batik.dom.GenericDOMImplementation;
-import org.w3c.dom.Document;
-import org.w3c.dom.DOMImplementation;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import org.openscience.cdk.interfaces.IAtomContainer;
 
-import net.sf.structure.cdk.paint.DefaultImagePainter;
-import net.sf.structure.cdk.paint.ImagePainter;
-import net.sf.structure.cdk.paint.GraphicsPainter;
 import net.sf.structure.cdk.paint.DefaultGraphicsPainter;
+import net.sf.structure.cdk.paint.Painter;
+import net.sf.structure.cdk.paint.RenderPlan;
+import net.sf.structure.cdk.paint.SVGWriter;
 
 /**
+ * <p>
  * A set of utility methods for rendering molecular images in a variety of formats.
+ * </p>
+ * 
+ * <p>
+ * <code>ImageKit</code> holds no shared painter state: every call lays out and paints
+ * its structure with painters of its own, so the methods of this class may be called
+ * from any number of threads at once. Rendering only reads the structure: aromaticity
+ * needed by the layout is perceived on a copy, so the same <code>IAtomContainer</code>
+ * may be rendered from several threads at once. It should not be modified while it is
+ * being rendered.
+ * </p>
+ * 
+ * <p>
+ * To produce several outputs from the same structure, lay it out once with
+ * {@link #createRenderPlan(IAtomContainer, Painter.SettingsImporter)} and pass the
+ * resulting <code>RenderPlan</code> to the methods that accept one.
+ * </p>
+ * 
+ * <p>
+ * Images can be written to files, to an <code>OutputStream</code> or a
+ * <code>WritableByteChannel</code>, or returned in a <code>ByteBuffer</code>. Streams
+ * and channels passed in are never closed. No method writes temporary files.
+ * </p>
  * 
  * @author Richard Apodaca
  */
 public class ImageKit
 {
-  private static ImagePainter painter = new DefaultImagePainter();
-  private static GraphicsPainter graphicsPainter = new DefaultGraphicsPainter();
+  private static volatile ImagePool imagePool = null;
+  private static volatile PNGEncoder pngEncoder = null;
   
-  static
+  /**
+   * This class should not be instantiated. Use the static methods instead.
+   */
+  private ImageKit()
   {
-    painter.setBackgroundColor(Color.WHITE);
+    
   }
   
   /**
-   * This class should not be instantiated. Use the static methods instead.
+   * Sets the <code>ImagePool</code> from which PNG and JPG images are rendered before
+   * encoding. Each image is returned to the pool once it has been encoded. By default
+   * no pool is used and every image is newly allocated. Images returned by
+   * <code>createRenderedImage</code> never come from the pool.
+   * 
+   * @param pool the pool to use, or <code>null</code> to allocate every image
    */
-  private ImageKit()
+  public static void setImagePool(ImagePool pool)
+  {
+    imagePool = pool;
+  }
+  
+  /**
+   * Returns the <code>ImagePool</code> used when encoding images.
+   * 
+   * @return the pool in use, or <code>null</code> if images are not pooled
+   */
+  public static ImagePool getImagePool()
+  {
+    return imagePool;
+  }
+  
+  /**
+   * Sets the <code>PNGEncoder</code> used to write PNG images. By default PNG images
+   * are written by ImageIO.
+   * 
+   * @param encoder the encoder to use, or <code>null</code> to use ImageIO
+   */
+  public static void setPNGEncoder(PNGEncoder encoder)
+  {
+    pngEncoder = encoder;
+  }
+  
+  /**
+   * Returns the <code>PNGEncoder</code> used to write PNG images.
+   * 
+   * @return the encoder in use, or <code>null</code> if ImageIO is used
+   */
+  public static PNGEncoder getPNGEncoder()
+  {
+    return pngEncoder;
+  }
+  
+  /**
+   * Lays out <code>structure</code> using the rendering settings supplied by
+   * <code>settings</code>. The returned <code>RenderPlan</code> can be rendered
+   * any number of times, in any format and at any size.
+   * 
+   * @param structure the Structure to be laid out
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   * @return a RenderPlan for <code>structure</code>
+   */
+  public static RenderPlan createRenderPlan(IAtomContainer structure, Painter.SettingsImporter settings)
   {
+    DefaultGraphicsPainter painter = new DefaultGraphicsPainter();
+    
+    if (settings != null)
+    {
+      painter.importSettings(settings);
+    }
     
+    return painter.createRenderPlan(structure);
   }
   
+  /**
+   * Writes a graphical representation of <code>structure</code> to an SVG file
+   * of dimensions <code>width</code> and <code>height</code>, using the specified
+   * <code>String</code> as the path name. Default rendering settings are used.
+   * 
+   * @param structure the Structure to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param filePath the file pathname
+   */
   public static void writeSVG(IAtomContainer structure, int width, int height, String filePath) throws IOException
   {
-    // Get a DOMImplementation
-    DOMImplementation domImpl =
-        GenericDOMImplementation.getDOMImplementation();
-
-    // Create an instance of org.w3c.dom.Document
-    Document document = domImpl.createDocument(null, "svg", null);
-    
-    // Create an instance of the SVG Generator
-    SVGGraphics2D svgGenerator = new SVGGraphics2D(document);
-    svgGenerator.setSVGCanvasSize(new Dimension(width,height));
+    writeSVG(structure, width, height, null, filePath);
+  }
+  
+  /**
+   * Writes a graphical representation of <code>structure</code> to an SVG file
+   * of dimensions <code>width</code> and <code>height</code>, using the specified
+   * <code>String</code> as the path name and the rendering settings supplied by
+   * <code>settings</code>.
+   * 
+   * @param structure the Structure to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   * @param filePath the file pathname
+   */
+  public static void writeSVG(IAtomContainer structure, int width, int height, Painter.SettingsImporter settings, String filePath) throws IOException
+  {
+    writeSVG(createRenderPlan(structure, settings), width, height, filePath);
+  }
+  
+  /**
+   * Writes <code>plan</code> to an SVG file of dimensions <code>width</code> and
+   * <code>height</code>, using the specified <code>String</code> as the path name.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param filePath the file pathname
+   */
+  public static void writeSVG(RenderPlan plan, int width, int height, String filePath) throws IOException
+  {
+    OutputStream out = new FileOutputStream(filePath);
     
-    graphicsPainter.setAtomContainer(structure);
-    graphicsPainter.paint(svgGenerator, new Rectangle(width, height));
+    try
+    {
+      writeSVG(plan, width, height, out);
+    }
     
-    Writer out = new OutputStreamWriter(new FileOutputStream(filePath), "UTF-8");
-    svgGenerator.stream(out, false);
+    finally
+    {
+      out.close();
+    }
+  }
+  
+  /**
+   * Writes a graphical representation of <code>structure</code> as an SVG image
+   * of dimensions <code>width</code> and <code>height</code> to <code>out</code>,
+   * using the rendering settings supplied by <code>settings</code>. The stream
+   * is flushed but not closed.
+   * 
+   * @param structure the Structure to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   * @param out the stream to write to
+   */
+  public static void writeSVG(IAtomContainer structure, int width, int height, Painter.SettingsImporter settings, OutputStream out) throws IOException
+  {
+    writeSVG(createRenderPlan(structure, settings), width, height, out);
+  }
+  
+  /**
+   * Writes <code>plan</code> as an SVG image of dimensions <code>width</code> and
+   * <code>height</code> to <code>out</code>. The stream is flushed but not closed.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param out the stream to write to
+   */
+  public static void writeSVG(RenderPlan plan, int width, int height, OutputStream out) throws IOException
+  {
+    write(plan, "svg", width, height, out);
   }
   
   /**
@@ -102,7 +252,80 @@ public class ImageKit
    */
   public static void writePNG(IAtomContainer structure, int width, int height, String filePath) throws IOException
   {
-    ImageIO.write(createRenderedImage(structure, width, height), "png", new File(filePath));
+    writePNG(structure, width, height, null, filePath);
+  }
+  
+  /**
+   * Writes a graphical representation of <code>structure</code> to a PNG image file
+   * of dimensions <code>width</code> and <code>height</code>, using the specified
+   * <code>String</code> as the path name and the rendering settings supplied by
+   * <code>settings</code>. A white background is used.
+   * 
+   * @param structure the Structure to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   * @param filePath the file pathname
+   */
+  public static void writePNG(IAtomContainer structure, int width, int height, Painter.SettingsImporter settings, String filePath) throws IOException
+  {
+    writePNG(createRenderPlan(structure, settings), width, height, filePath);
+  }
+  
+  /**
+   * Writes <code>plan</code> to a PNG image file of dimensions <code>width</code>
+   * and <code>height</code>, using the specified <code>String</code> as the path name.
+   * A white background is used.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param filePath the file pathname
+   */
+  public static void writePNG(RenderPlan plan, int width, int height, String filePath) throws IOException
+  {
+    OutputStream out = new FileOutputStream(filePath);
+    
+    try
+    {
+      writePNG(plan, width, height, out);
+    }
+    
+    finally
+    {
+      out.close();
+    }
+  }
+  
+  /**
+   * Writes a graphical representation of <code>structure</code> as a PNG image
+   * of dimensions <code>width</code> and <code>height</code> to <code>out</code>,
+   * using the rendering settings supplied by <code>settings</code>. A white background is used. The stream
+   * is flushed but not closed.
+   * 
+   * @param structure the Structure to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   * @param out the stream to write to
+   */
+  public static void writePNG(IAtomContainer structure, int width, int height, Painter.SettingsImporter settings, OutputStream out) throws IOException
+  {
+    writePNG(createRenderPlan(structure, settings), width, height, out);
+  }
+  
+  /**
+   * Writes <code>plan</code> as a PNG image of dimensions <code>width</code> and
+   * <code>height</code> to <code>out</code>. A white background is used. The stream is flushed but not closed.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param out the stream to write to
+   */
+  public static void writePNG(RenderPlan plan, int width, int height, OutputStream out) throws IOException
+  {
+    write(plan, "png", width, height, out);
   }
   
   /**
@@ -118,7 +341,189 @@ public class ImageKit
    */
   public static void writeJPG(IAtomContainer structure, int width, int height, String filePath) throws IOException
   {
-    ImageIO.write(createRenderedImage(structure, width, height), "jpg", new File(filePath));
+    writeJPG(structure, width, height, null, filePath);
+  }
+  
+  /**
+   * Writes a graphical representation of <code>structure</code> to a JPG image file
+   * of dimensions <code>width</code> and <code>height</code>, using the specified
+   * <code>String</code> as the path name and the rendering settings supplied by
+   * <code>settings</code>. A white background is used.
+   * 
+   * @param structure the Structure to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   * @param filePath the file pathname
+   */
+  public static void writeJPG(IAtomContainer structure, int width, int height, Painter.SettingsImporter settings, String filePath) throws IOException
+  {
+    writeJPG(createRenderPlan(structure, settings), width, height, filePath);
+  }
+  
+  /**
+   * Writes <code>plan</code> to a JPG image file of dimensions <code>width</code>
+   * and <code>height</code>, using the specified <code>String</code> as the path name.
+   * A white background is used.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param filePath the file pathname
+   */
+  public static void writeJPG(RenderPlan plan, int width, int height, String filePath) throws IOException
+  {
+    OutputStream out = new FileOutputStream(filePath);
+    
+    try
+    {
+      writeJPG(plan, width, height, out);
+    }
+    
+    finally
+    {
+      out.close();
+    }
+  }
+  
+  /**
+   * Writes a graphical representation of <code>structure</code> as a JPG image
+   * of dimensions <code>width</code> and <code>height</code> to <code>out</code>,
+   * using the rendering settings supplied by <code>settings</code>. A white background is used. The stream
+   * is flushed but not closed.
+   * 
+   * @param structure the Structure to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   * @param out the stream to write to
+   */
+  public static void writeJPG(IAtomContainer structure, int width, int height, Painter.SettingsImporter settings, OutputStream out) throws IOException
+  {
+    writeJPG(createRenderPlan(structure, settings), width, height, out);
+  }
+  
+  /**
+   * Writes <code>plan</code> as a JPG image of dimensions <code>width</code> and
+   * <code>height</code> to <code>out</code>. A white background is used. The stream is flushed but not closed.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param out the stream to write to
+   */
+  public static void writeJPG(RenderPlan plan, int width, int height, OutputStream out) throws IOException
+  {
+    write(plan, "jpg", width, height, out);
+  }
+  
+  /**
+   * Writes <code>plan</code> as an image of the specified format and dimensions to
+   * <code>out</code>. PNG and JPG images have a white background. The stream is
+   * flushed but not closed.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param format the image format, one of <code>"png"</code>, <code>"jpg"</code> or <code>"svg"</code>
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param out the stream to write to
+   */
+  public static void write(RenderPlan plan, String format, int width, int height, OutputStream out) throws IOException
+  {
+    if ("svg".equals(format))
+    {
+      SVGWriter.write(plan, width, height, out);
+    }
+    
+    else if ("png".equals(format) || "jpg".equals(format))
+    {
+      ImagePool pool = imagePool;
+      
+      if (pool == null)
+      {
+        writeImage((BufferedImage) createRenderedImage(plan, width, height), format, out);
+        
+        return;
+      }
+      
+      BufferedImage image = pool.acquire(width, height, BufferedImage.TYPE_INT_RGB);
+      
+      try
+      {
+        paintImage(plan, image);
+        writeImage(image, format, out);
+      }
+      
+      finally
+      {
+        pool.release(image);
+      }
+    }
+    
+    else
+    {
+      throw new IllegalArgumentException("Unsupported format: " + format);
+    }
+  }
+  
+  /**
+   * Writes <code>plan</code> as an image of the specified format and dimensions to
+   * <code>channel</code>. PNG and JPG images have a white background. The channel is
+   * not closed.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param format the image format, one of <code>"png"</code>, <code>"jpg"</code> or <code>"svg"</code>
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param channel the channel to write to
+   */
+  public static void write(RenderPlan plan, String format, int width, int height, WritableByteChannel channel) throws IOException
+  {
+    ByteBuffer buffer = createImageBuffer(plan, format, width, height);
+    
+    while (buffer.hasRemaining())
+    {
+      channel.write(buffer);
+    }
+  }
+  
+  /**
+   * Encodes <code>plan</code> as an image of the specified format and dimensions.
+   * PNG and JPG images have a white background. The returned buffer is positioned at
+   * the start of the image and its limit is the end of the image.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param format the image format, one of <code>"png"</code>, <code>"jpg"</code> or <code>"svg"</code>
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @return the encoded image
+   */
+  public static ByteBuffer createImageBuffer(RenderPlan plan, String format, int width, int height) throws IOException
+  {
+    ImageBuffer out = new ImageBuffer();
+    
+    write(plan, format, width, height, out);
+    
+    return out.toByteBuffer();
+  }
+  
+  /**
+   * Encodes <code>plan</code> as an image of the specified format and dimensions and
+   * returns the encoded bytes.
+   * 
+   * @param plan the RenderPlan to be rendered
+   * @param format the image format, one of <code>"png"</code>, <code>"jpg"</code> or <code>"svg"</code>
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @return the encoded image
+   */
+  static byte[] createImageBytes(RenderPlan plan, String format, int width, int height) throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    
+    write(plan, format, width, height, out);
+    
+    return out.toByteArray();
   }
   
   /**
@@ -131,12 +536,114 @@ public class ImageKit
    * @return a RenderedImage containing the specified <code>Structure</code>
    */
   public static RenderedImage createRenderedImage(IAtomContainer structure, int width, int height)
+  {
+    return createRenderedImage(structure, width, height, null);
+  }
+  
+  /**
+   * Creates a <code>RenderedImage</code> of the specified dimensions from the specified
+   * <code>Structure</code>, using the rendering settings supplied by <code>settings</code>.
+   * A white background is used.
+   * 
+   * @param structure the Structure to create an image from
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   * @return a RenderedImage containing the specified <code>Structure</code>
+   */
+  public static RenderedImage createRenderedImage(IAtomContainer structure, int width, int height, Painter.SettingsImporter settings)
+  {
+    return createRenderedImage(createRenderPlan(structure, settings), width, height);
+  }
+  
+  /**
+   * Creates a <code>RenderedImage</code> of the specified dimensions from the specified
+   * <code>RenderPlan</code>. A white background is used.
+   * 
+   * @param plan the RenderPlan to create an image from
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @return a RenderedImage containing the specified <code>RenderPlan</code>
+   */
+  public static RenderedImage createRenderedImage(RenderPlan plan, int width, int height)
   {
     BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
     
-    painter.setAtomContainer(structure);
-    painter.paint(image);
+    paintImage(plan, image);
     
     return image;
   }
+  
+  /**
+   * Clears <code>image</code> to white and paints <code>plan</code> over it.
+   */
+  private static void paintImage(RenderPlan plan, BufferedImage image)
+  {
+    Graphics2D g = image.createGraphics();
+    Rectangle bounds = new Rectangle(image.getWidth(), image.getHeight());
+    
+    try
+    {
+      g.setColor(Color.WHITE);
+      g.fill(bounds);
+      plan.paint(g, bounds);
+    }
+    
+    finally
+    {
+      g.dispose();
+    }
+  }
+  
+  /**
+   * Encodes <code>image</code> to <code>out</code>, with the <code>PNGEncoder</code> if
+   * one is set, or otherwise with ImageIO through an in-memory cache, so that ImageIO
+   * never buffers the image in a temporary file.
+   */
+  static void writeImage(BufferedImage image, String format, OutputStream out) throws IOException
+  {
+    PNGEncoder encoder = pngEncoder;
+    
+    if (encoder != null && "png".equals(format))
+    {
+      encoder.encode(image, out);
+      
+      return;
+    }
+    
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+    
+    if (!writers.hasNext())
+    {
+      throw new IOException("No image writer for format: " + format);
+    }
+    
+    ImageWriter writer = writers.next();
+    ImageOutputStream stream = new MemoryCacheImageOutputStream(out);
+    
+    try
+    {
+      writer.setOutput(stream);
+      writer.write(image);
+    }
+    
+    finally
+    {
+      writer.dispose();
+      stream.close(); // flushes to out, which stays open
+    }
+    
+    out.flush();
+  }
+  
+  /**
+   * A <code>ByteArrayOutputStream</code> whose contents can be wrapped without copying.
+   */
+  private static final class ImageBuffer extends ByteArrayOutputStream
+  {
+    private ByteBuffer toByteBuffer()
+    {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
 }
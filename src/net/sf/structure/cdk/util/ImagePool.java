@@ -0,0 +1,190 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.util;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A bounded pool of <code>BufferedImage</code>s, grouped into size classes by width,
+ * height and image type. Rendering into a recycled image avoids allocating a fresh
+ * raster for every request.
+ * </p>
+ *
+ * <p>
+ * Each size class holds at most <code>imagesPerSize</code> idle images, and at most
+ * <code>sizeCount</code> size classes are kept; when another is needed, the least
+ * recently used class and its images are dropped. Images are handed out with their
+ * previous contents, so callers must clear them. All methods are thread-safe.
+ * </p>
+ */
+public class ImagePool
+{
+  private LinkedHashMap<SizeClass, List<BufferedImage>> images;
+  private int imagesPerSize;
+  private long created;
+  private long reused;
+
+  /**
+   * Constructs an <code>ImagePool</code> keeping at most <code>imagesPerSize</code>
+   * idle images in each of at most <code>sizeCount</code> size classes.
+   *
+   * @param imagesPerSize the maximum number of idle images per size class
+   * @param sizeCount the maximum number of size classes
+   */
+  public ImagePool(int imagesPerSize, final int sizeCount)
+  {
+    this.images = new LinkedHashMap<SizeClass, List<BufferedImage>>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1;
+
+      protected boolean removeEldestEntry(Map.Entry<SizeClass, List<BufferedImage>> eldest)
+      {
+        return size() > sizeCount;
+      }
+    };
+    this.imagesPerSize = imagesPerSize;
+    this.created = 0;
+    this.reused = 0;
+  }
+
+  /**
+   * Returns an image of the specified dimensions and type, recycling an idle one if
+   * available. The contents of a recycled image are undefined.
+   *
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param type the image type, as for <code>BufferedImage</code>
+   * @return an image of the specified dimensions and type
+   */
+  public BufferedImage acquire(int width, int height, int type)
+  {
+    synchronized (this)
+    {
+      List<BufferedImage> idle = images.get(new SizeClass(width, height, type));
+
+      if (idle != null && !idle.isEmpty())
+      {
+        reused++;
+
+        return idle.remove(idle.size() - 1);
+      }
+
+      created++;
+    }
+
+    return new BufferedImage(width, height, type);
+  }
+
+  /**
+   * Returns <code>image</code> to the pool. The caller must not use it afterwards.
+   * If its size class is full, the image is left to the garbage collector.
+   *
+   * @param image an image obtained from {@link #acquire(int, int, int)}
+   */
+  public synchronized void release(BufferedImage image)
+  {
+    SizeClass sizeClass = new SizeClass(image.getWidth(), image.getHeight(), image.getType());
+    List<BufferedImage> idle = images.get(sizeClass);
+
+    if (idle == null)
+    {
+      idle = new ArrayList<BufferedImage>(imagesPerSize);
+      images.put(sizeClass, idle);
+    }
+
+    if (idle.size() < imagesPerSize)
+    {
+      idle.add(image);
+    }
+  }
+
+  /**
+   * Returns the number of images allocated because no idle image was available.
+   *
+   * @return the number of images created
+   */
+  public synchronized long getCreatedCount()
+  {
+    return created;
+  }
+
+  /**
+   * Returns the number of requests answered with a recycled image.
+   *
+   * @return the number of images reused
+   */
+  public synchronized long getReusedCount()
+  {
+    return reused;
+  }
+
+  /**
+   * Drops all idle images.
+   */
+  public synchronized void clear()
+  {
+    images.clear();
+  }
+
+  private static final class SizeClass
+  {
+    private int width;
+    private int height;
+    private int type;
+
+    private SizeClass(int width, int height, int type)
+    {
+      this.width = width;
+      this.height = height;
+      this.type = type;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object obj)
+    {
+      if (!(obj instanceof SizeClass))
+      {
+        return false;
+      }
+
+      SizeClass sizeClass = (SizeClass) obj;
+
+      return width == sizeClass.width && height == sizeClass.height && type == sizeClass.type;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode()
+    {
+      return (31 * width + height) * 31 + type;
+    }
+  }
+}
@@ -0,0 +1,718 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * A PNG encoder for structure depictions. Such images are mostly background with a
+ * few ink colors, so when an image has at most 256 colors it is written as an indexed
+ * PNG, packed to 1, 2, 4 or 8 bits per pixel. Otherwise it is written as 24-bit RGB.
+ * </p>
+ *
+ * <p>
+ * Antialiased edges can push an image past 256 colors. An encoder built with
+ * <code>quantizationBits</code> greater than zero may then drop up to that many
+ * low-order bits of each color channel to fit the image into a palette. Pure white
+ * and pure black are preserved.
+ * </p>
+ *
+ * <p>
+ * Images too large to hold in memory at once can be streamed: a <code>RowWriter</code>
+ * from {@link #createRowWriter(int, int, OutputStream)} accepts the image in horizontal
+ * strips, top to bottom, and always writes 24-bit RGB, since choosing a palette needs
+ * every pixel in advance.
+ * </p>
+ *
+ * <p>
+ * The deflate level trades encoding time against size. Each thread reuses its own
+ * <code>Deflater</code>, so an encoder can be shared by any number of threads.
+ * </p>
+ */
+public class PNGEncoder
+{
+  private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+  private static final int MAXIMUM_PALETTE_SIZE = 256;
+  private static final int CHUNK_SIZE = 32768;
+
+  private static final int COLOR_TYPE_RGB = 2;
+  private static final int COLOR_TYPE_INDEXED = 3;
+
+  private static final int FILTER_NONE = 0;
+  private static final int FILTER_SUB = 1;
+  private static final int FILTER_UP = 2;
+  private static final int FILTER_AVERAGE = 3;
+  private static final int FILTER_PAETH = 4;
+
+  private int compressionLevel;
+  private boolean palette;
+  private int quantizationBits;
+  private ThreadLocal<Deflater> deflaters;
+
+  /**
+   * Constructs a lossless <code>PNGEncoder</code> using the specified deflate level.
+   *
+   * @param compressionLevel the deflate level, from 0 (none) through 9 (smallest)
+   * @param palette whether images of at most 256 colors are written as indexed PNG
+   */
+  public PNGEncoder(int compressionLevel, boolean palette)
+  {
+    this(compressionLevel, palette, 0);
+  }
+
+  /**
+   * Constructs a <code>PNGEncoder</code> using the specified deflate level that may
+   * drop up to <code>quantizationBits</code> low-order bits of each color channel to
+   * write an image as indexed PNG.
+   *
+   * @param compressionLevel the deflate level, from 0 (none) through 9 (smallest)
+   * @param palette whether images are written as indexed PNG where possible
+   * @param quantizationBits the number of bits per channel that may be dropped, from 0 through 4
+   */
+  public PNGEncoder(int compressionLevel, boolean palette, int quantizationBits)
+  {
+    if (compressionLevel < 0 || compressionLevel > 9)
+    {
+      throw new IllegalArgumentException("Compression level must be from 0 through 9: " + compressionLevel);
+    }
+
+    if (quantizationBits < 0 || quantizationBits > 4)
+    {
+      throw new IllegalArgumentException("Quantization bits must be from 0 through 4: " + quantizationBits);
+    }
+
+    this.compressionLevel = compressionLevel;
+    this.palette = palette;
+    this.quantizationBits = quantizationBits;
+    this.deflaters = new ThreadLocal<Deflater>()
+    {
+      protected Deflater initialValue()
+      {
+        return new Deflater();
+      }
+    };
+  }
+
+  /**
+   * Returns the deflate level.
+   *
+   * @return the deflate level
+   */
+  public int getCompressionLevel()
+  {
+    return compressionLevel;
+  }
+
+  /**
+   * Returns whether images are written as indexed PNG where possible.
+   *
+   * @return <code>true</code> if palettes are used
+   */
+  public boolean isPaletteEnabled()
+  {
+    return palette;
+  }
+
+  /**
+   * Returns the number of low-order bits per channel that may be dropped to write an
+   * image as indexed PNG.
+   *
+   * @return the number of quantization bits
+   */
+  public int getQuantizationBits()
+  {
+    return quantizationBits;
+  }
+
+  /**
+   * Encodes <code>image</code> as PNG to <code>out</code>. Alpha is ignored. The stream
+   * is flushed but not closed.
+   *
+   * @param image the image to encode
+   * @param out the stream to write to
+   * @throws IOException if the image cannot be written
+   */
+  public void encode(BufferedImage image, OutputStream out) throws IOException
+  {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] row = new int[width];
+    ColorTable colors = palette ? createColorTable(image, row) : null;
+
+    if (colors == null)
+    {
+      RowWriter writer = createRowWriter(width, height, out);
+
+      writer.write(image);
+      writer.finish();
+
+      return;
+    }
+
+    int bitDepth = getBitDepth(colors.size());
+    ImageDataWriter writer = new ImageDataWriter(out);
+    byte[] indexedRow = new byte[1 + (width * bitDepth + 7) / 8];
+
+    writeSignature(out);
+    writeHeader(out, width, height, bitDepth, COLOR_TYPE_INDEXED);
+    writeChunk(out, "PLTE", colors.createPalette(), 3 * colors.size());
+
+    for (int y = 0; y < height; y++)
+    {
+      writer.writeRow(encodeIndexedRow(getRow(image, y, row), colors, bitDepth, indexedRow));
+    }
+
+    writer.finish();
+    writeChunk(out, "IEND", new byte[0], 0);
+    out.flush();
+  }
+
+  /**
+   * Starts encoding a 24-bit RGB PNG image of the specified dimensions to
+   * <code>out</code>, and returns the <code>RowWriter</code> that accepts its rows.
+   * The returned writer must be used on the thread that created it.
+   *
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param out the stream to write to
+   * @return a writer for the rows of the image
+   * @throws IOException if the header cannot be written
+   */
+  public RowWriter createRowWriter(int width, int height, OutputStream out) throws IOException
+  {
+    return new RowWriter(width, height, out);
+  }
+
+  /**
+   * Returns the color table of <code>image</code>, quantizing as little as possible,
+   * or <code>null</code> if the image does not fit a palette.
+   */
+  private ColorTable createColorTable(BufferedImage image, int[] row)
+  {
+    for (int bits = 0; bits <= quantizationBits; bits++)
+    {
+      ColorTable result = new ColorTable(bits);
+
+      if (result.addAll(image, row))
+      {
+        return result;
+      }
+    }
+
+    return null;
+  }
+
+  private static int[] getRow(BufferedImage image, int y, int[] row)
+  {
+    if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB)
+    {
+      Raster raster = image.getRaster();
+
+      return (int[]) raster.getDataElements(0, y, image.getWidth(), 1, row);
+    }
+
+    return image.getRGB(0, y, image.getWidth(), 1, row, 0, image.getWidth());
+  }
+
+  private static int getBitDepth(int colorCount)
+  {
+    if (colorCount <= 2)
+    {
+      return 1;
+    }
+
+    if (colorCount <= 4)
+    {
+      return 2;
+    }
+
+    if (colorCount <= 16)
+    {
+      return 4;
+    }
+
+    return 8;
+  }
+
+  private static byte[] encodeIndexedRow(int[] pixels, ColorTable colors, int bitDepth, byte[] result)
+  {
+    int pixelsPerByte = 8 / bitDepth;
+
+    Arrays.fill(result, (byte) 0);
+    result[0] = FILTER_NONE;
+
+    for (int x = 0; x < pixels.length; x++)
+    {
+      int index = colors.indexOf(pixels[x]);
+      int shift = 8 - bitDepth * (x % pixelsPerByte + 1);
+
+      result[1 + x / pixelsPerByte] |= index << shift;
+    }
+
+    return result;
+  }
+
+  private static void writeSignature(OutputStream out) throws IOException
+  {
+    out.write(SIGNATURE);
+  }
+
+  private static void writeHeader(OutputStream out, int width, int height, int bitDepth, int colorType) throws IOException
+  {
+    byte[] data = new byte[13];
+
+    putInt(data, 0, width);
+    putInt(data, 4, height);
+    data[8] = (byte) bitDepth;
+    data[9] = (byte) colorType;
+    data[10] = 0; // deflate
+    data[11] = 0; // adaptive filtering
+    data[12] = 0; // no interlace
+
+    writeChunk(out, "IHDR", data, data.length);
+  }
+
+  private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException
+  {
+    byte[] header = new byte[8];
+    CRC32 crc = new CRC32();
+
+    putInt(header, 0, length);
+
+    for (int i = 0; i < 4; i++)
+    {
+      header[4 + i] = (byte) type.charAt(i);
+    }
+
+    crc.update(header, 4, 4);
+    crc.update(data, 0, length);
+
+    out.write(header);
+    out.write(data, 0, length);
+
+    byte[] trailer = new byte[4];
+
+    putInt(trailer, 0, (int) crc.getValue());
+    out.write(trailer);
+  }
+
+  private static void putInt(byte[] data, int offset, int value)
+  {
+    data[offset] = (byte) (value >>> 24);
+    data[offset + 1] = (byte) (value >>> 16);
+    data[offset + 2] = (byte) (value >>> 8);
+    data[offset + 3] = (byte) value;
+  }
+
+  /**
+   * Encodes an RGB image supplied in horizontal strips. Strips must be as wide as the
+   * image and are consumed top to bottom; once they add up to the height of the
+   * image, {@link #finish()} completes it.
+   */
+  public final class RowWriter
+  {
+    private OutputStream out;
+    private int width;
+    private int height;
+    private int rowCount;
+    private int[] row;
+    private ImageDataWriter writer;
+    private RGBRowFilter filter;
+
+    private RowWriter(int width, int height, OutputStream out) throws IOException
+    {
+      this.out = out;
+      this.width = width;
+      this.height = height;
+      this.rowCount = 0;
+      this.row = new int[width];
+
+      writeSignature(out);
+      writeHeader(out, width, height, 8, COLOR_TYPE_RGB);
+
+      this.writer = new ImageDataWriter(out);
+      this.filter = new RGBRowFilter(width);
+    }
+
+    /**
+     * Encodes the rows of <code>strip</code> as the next rows of the image. Alpha is
+     * ignored.
+     *
+     * @param strip the next rows of the image
+     * @throws IOException if the rows cannot be written
+     */
+    public void write(BufferedImage strip) throws IOException
+    {
+      if (strip.getWidth() != width)
+      {
+        throw new IllegalArgumentException("Strip width " + strip.getWidth() + " differs from image width " + width);
+      }
+
+      if (rowCount + strip.getHeight() > height)
+      {
+        throw new IllegalStateException("Image height exceeded: " + height);
+      }
+
+      for (int y = 0; y < strip.getHeight(); y++)
+      {
+        writer.writeRow(filter.filter(getRow(strip, y, row)));
+      }
+
+      rowCount += strip.getHeight();
+    }
+
+    /**
+     * Completes the image once all of its rows have been written. The stream is
+     * flushed but not closed.
+     *
+     * @throws IOException if the image cannot be written
+     */
+    public void finish() throws IOException
+    {
+      if (rowCount != height)
+      {
+        throw new IllegalStateException("Only " + rowCount + " of " + height + " rows written");
+      }
+
+      writer.finish();
+      writeChunk(out, "IEND", new byte[0], 0);
+      out.flush();
+    }
+  }
+
+  /**
+   * Compresses filtered rows with this thread's <code>Deflater</code> and writes the
+   * compressed data as IDAT chunks.
+   */
+  private class ImageDataWriter
+  {
+    private OutputStream out;
+    private Deflater deflater;
+    private byte[] chunk;
+    private int chunkLength;
+
+    private ImageDataWriter(OutputStream out)
+    {
+      this.out = out;
+      this.deflater = deflaters.get();
+      this.chunk = new byte[CHUNK_SIZE];
+      this.chunkLength = 0;
+
+      deflater.reset();
+      deflater.setLevel(compressionLevel);
+    }
+
+    private void writeRow(byte[] data) throws IOException
+    {
+      deflater.setInput(data, 0, data.length);
+
+      while (!deflater.needsInput())
+      {
+        deflate();
+      }
+    }
+
+    private void finish() throws IOException
+    {
+      deflater.finish();
+
+      while (!deflater.finished())
+      {
+        deflate();
+      }
+
+      if (chunkLength > 0)
+      {
+        writeChunk(out, "IDAT", chunk, chunkLength);
+      }
+    }
+
+    private void deflate() throws IOException
+    {
+      chunkLength += deflater.deflate(chunk, chunkLength, chunk.length - chunkLength);
+
+      if (chunkLength == chunk.length)
+      {
+        writeChunk(out, "IDAT", chunk, chunkLength);
+        chunkLength = 0;
+      }
+    }
+  }
+
+  /**
+   * Filters 24-bit RGB rows, choosing for each row the filter type whose output has
+   * the smallest sum of absolute differences, as the PNG specification suggests.
+   */
+  private static class RGBRowFilter
+  {
+    private byte[] current;
+    private byte[] prior;
+    private byte[][] candidates;
+
+    private RGBRowFilter(int width)
+    {
+      this.current = new byte[3 * width];
+      this.prior = new byte[3 * width];
+      this.candidates = new byte[5][1 + 3 * width];
+
+      for (int i = 0; i < candidates.length; i++)
+      {
+        candidates[i][0] = (byte) i;
+      }
+    }
+
+    private byte[] filter(int[] pixels)
+    {
+      byte[] swap = prior;
+
+      prior = current;
+      current = swap;
+
+      for (int x = 0, i = 0; x < pixels.length; x++, i += 3)
+      {
+        current[i] = (byte) (pixels[x] >> 16);
+        current[i + 1] = (byte) (pixels[x] >> 8);
+        current[i + 2] = (byte) pixels[x];
+      }
+
+      byte[] best = null;
+      long bestSum = Long.MAX_VALUE;
+
+      for (int type = FILTER_NONE; type <= FILTER_PAETH; type++)
+      {
+        long sum = apply(type, candidates[type]);
+
+        if (sum < bestSum)
+        {
+          best = candidates[type];
+          bestSum = sum;
+        }
+      }
+
+      return best;
+    }
+
+    private long apply(int type, byte[] result)
+    {
+      long sum = 0;
+
+      if (type == FILTER_NONE)
+      {
+        for (int i = 0; i < current.length; i++)
+        {
+          result[i + 1] = current[i];
+          sum += Math.abs(current[i]);
+        }
+
+        return sum;
+      }
+
+      for (int i = 0; i < current.length; i++)
+      {
+        int raw = current[i] & 0xff;
+        int left = i < 3 ? 0 : current[i - 3] & 0xff;
+        int up = prior[i] & 0xff;
+        byte value;
+
+        if (type == FILTER_SUB)
+        {
+          value = (byte) (raw - left);
+        }
+
+        else if (type == FILTER_UP)
+        {
+          value = (byte) (raw - up);
+        }
+
+        else if (type == FILTER_AVERAGE)
+        {
+          value = (byte) (raw - ((left + up) >> 1));
+        }
+
+        else
+        {
+          value = (byte) (raw - paeth(left, up, i < 3 ? 0 : prior[i - 3] & 0xff));
+        }
+
+        result[i + 1] = value;
+        sum += value < 0 ? -value : value;
+      }
+
+      return sum;
+    }
+
+    private static int paeth(int left, int up, int upperLeft)
+    {
+      int estimate = left + up - upperLeft;
+      int toLeft = Math.abs(estimate - left);
+      int toUp = Math.abs(estimate - up);
+      int toUpperLeft = Math.abs(estimate - upperLeft);
+
+      if (toLeft <= toUp && toLeft <= toUpperLeft)
+      {
+        return left;
+      }
+
+      return toUp <= toUpperLeft ? up : upperLeft;
+    }
+  }
+
+  /**
+   * The distinct colors of an image after dropping <code>bits</code> low-order bits
+   * of each channel, held in an open-addressing hash table.
+   */
+  private static class ColorTable
+  {
+    private static final int EMPTY = 0;
+    private static final int PRESENT = 0x1000000;
+
+    private int bits;
+    private int[] keys;
+    private int[] indices;
+    private int[] colors;
+    private int size;
+
+    private ColorTable(int bits)
+    {
+      this.bits = bits;
+      this.keys = new int[4 * MAXIMUM_PALETTE_SIZE];
+      this.indices = new int[keys.length];
+      this.colors = new int[MAXIMUM_PALETTE_SIZE];
+      this.size = 0;
+    }
+
+    /**
+     * Adds the colors of <code>image</code>, returning <code>false</code> as soon as
+     * there are too many for a palette.
+     */
+    private boolean addAll(BufferedImage image, int[] row)
+    {
+      int last = -1;
+
+      for (int y = 0; y < image.getHeight(); y++)
+      {
+        int[] pixels = getRow(image, y, row);
+
+        for (int x = 0; x < pixels.length; x++)
+        {
+          int pixel = pixels[x] & 0xffffff;
+
+          if (pixel != last && !add(quantize(pixel)))
+          {
+            return false;
+          }
+
+          last = pixel;
+        }
+      }
+
+      return true;
+    }
+
+    private boolean add(int color)
+    {
+      int slot = find(color);
+
+      if (keys[slot] != EMPTY)
+      {
+        return true;
+      }
+
+      if (size == MAXIMUM_PALETTE_SIZE)
+      {
+        return false;
+      }
+
+      keys[slot] = color | PRESENT;
+      indices[slot] = size;
+      colors[size++] = color;
+
+      return true;
+    }
+
+    private int indexOf(int pixel)
+    {
+      return indices[find(quantize(pixel & 0xffffff))];
+    }
+
+    private int find(int color)
+    {
+      int mask = keys.length - 1;
+      int slot = (color * 0x9e3779b1 >>> 16) & mask;
+
+      while (keys[slot] != EMPTY && keys[slot] != (color | PRESENT))
+      {
+        slot = (slot + 1) & mask;
+      }
+
+      return slot;
+    }
+
+    private int quantize(int color)
+    {
+      if (bits == 0)
+      {
+        return color;
+      }
+
+      return quantizeChannel(color >> 16 & 0xff) << 16 | quantizeChannel(color >> 8 & 0xff) << 8 |
+        quantizeChannel(color & 0xff);
+    }
+
+    /**
+     * Rounds <code>channel</code> to the nearest multiple of 2^bits, keeping 255 at 255.
+     */
+    private int quantizeChannel(int channel)
+    {
+      int result = (channel + (1 << (bits - 1))) & ~((1 << bits) - 1);
+
+      return result > 255 ? 255 : result;
+    }
+
+    private int size()
+    {
+      return size;
+    }
+
+    private byte[] createPalette()
+    {
+      byte[] result = new byte[3 * size];
+
+      for (int i = 0; i < size; i++)
+      {
+        result[3 * i] = (byte) (colors[i] >> 16);
+        result[3 * i + 1] = (byte) (colors[i] >> 8);
+        result[3 * i + 2] = (byte) colors[i];
+      }
+
+      return result;
+    }
+  }
+}
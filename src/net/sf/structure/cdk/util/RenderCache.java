@@ -0,0 +1,450 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.util;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+import net.sf.structure.cdk.paint.ColorScheme;
+import net.sf.structure.cdk.paint.DefaultGraphicsPainter;
+import net.sf.structure.cdk.paint.Painter;
+
+/**
+ * <p>
+ * A cache of encoded images placed in front of <code>ImageKit</code>. Images are keyed
+ * by a hash of the structure as drawn, the rendering settings, the output format, the
+ * dimensions and, for PNG images, the <code>PNGEncoder</code> in use and its settings;
+ * a hit returns the encoded bytes without laying out or painting.
+ * </p>
+ *
+ * <p>
+ * The structure hash covers element symbols, 2-D coordinates, bond orders and the
+ * direction of each bond, in the order the container lists its atoms and bonds: the
+ * layout places some double bonds by bond direction and by neighbor order, so only
+ * containers listing the same atoms and bonds in the same order share cache entries.
+ * Aromaticity flags are covered only for structures marked with
+ * {@link DefaultGraphicsPainter#AROMATICITY_PERCEIVED}, since they are perceived
+ * again from the bond orders of any other structure.
+ * </p>
+ *
+ * <p>
+ * The cache is bounded by the total size of the encoded images it holds; when adding
+ * an image would exceed that bound, least recently used images are evicted. All methods
+ * are thread-safe. Concurrent misses for the same key may each render the image.
+ * </p>
+ */
+public class RenderCache
+{
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private LinkedHashMap<Key, byte[]> images;
+  private long maximumBytes;
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Constructs a <code>RenderCache</code> holding at most <code>maximumBytes</code>
+   * bytes of encoded images.
+   *
+   * @param maximumBytes the maximum total size of cached images
+   */
+  public RenderCache(long maximumBytes)
+  {
+    this.images = new LinkedHashMap<Key, byte[]>(16, 0.75f, true);
+    this.maximumBytes = maximumBytes;
+    this.bytes = 0;
+    this.hits = 0;
+    this.misses = 0;
+    this.evictions = 0;
+  }
+
+  /**
+   * Returns the encoded image of <code>structure</code>, rendering and caching it if
+   * necessary. The returned array is shared with the cache and must not be modified.
+   *
+   * @param structure the Structure to be rendered
+   * @param settings the rendering settings, or <code>null</code> for the defaults
+   * @param format the image format, one of <code>"png"</code>, <code>"jpg"</code> or
+   * <code>"svg"</code>, in any case
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @return the encoded image
+   * @throws IOException if the image cannot be encoded
+   */
+  public byte[] getImage(IAtomContainer structure, Painter.SettingsImporter settings,
+    String format, int width, int height) throws IOException
+  {
+    format = format.toLowerCase(Locale.ENGLISH);
+
+    Key key = new Key(createStructureHash(structure), settings, format, width, height);
+
+    synchronized (this)
+    {
+      byte[] result = images.get(key);
+
+      if (result != null)
+      {
+        hits++;
+
+        return result;
+      }
+
+      misses++;
+    }
+
+    byte[] result =
+      ImageKit.createImageBytes(ImageKit.createRenderPlan(structure, settings), format, width, height);
+
+    put(key, result);
+
+    return result;
+  }
+
+  /**
+   * Returns the number of requests answered from the cache.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHitCount()
+  {
+    return hits;
+  }
+
+  /**
+   * Returns the number of requests that required rendering.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMissCount()
+  {
+    return misses;
+  }
+
+  /**
+   * Returns the number of images evicted to stay within the size bound.
+   *
+   * @return the number of evictions
+   */
+  public synchronized long getEvictionCount()
+  {
+    return evictions;
+  }
+
+  /**
+   * Returns the number of cached images.
+   *
+   * @return the number of cached images
+   */
+  public synchronized int getImageCount()
+  {
+    return images.size();
+  }
+
+  /**
+   * Returns the total size, in bytes, of the cached images.
+   *
+   * @return the total size of the cached images
+   */
+  public synchronized long getSize()
+  {
+    return bytes;
+  }
+
+  /**
+   * Removes all images from the cache. The hit, miss and eviction counts are kept.
+   */
+  public synchronized void clear()
+  {
+    images.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Returns a hash of <code>structure</code> as it would be drawn: its element symbols,
+   * 2-D coordinates, bond orders and bond directions, and, if it is marked with
+   * {@link DefaultGraphicsPainter#AROMATICITY_PERCEIVED}, the aromaticity flags of its
+   * atoms. Atoms and bonds are hashed in the order the container lists them.
+   *
+   * @param structure the structure to hash
+   * @return a hexadecimal SHA-1 digest of the structure
+   */
+  public static String createStructureHash(IAtomContainer structure)
+  {
+    List<String> entries = new ArrayList<String>();
+    Map<IAtom, Integer> atomIndices = new HashMap<IAtom, Integer>();
+    boolean perceived = Boolean.TRUE.equals(structure.getProperty(DefaultGraphicsPainter.AROMATICITY_PERCEIVED));
+
+    if (perceived)
+    {
+      entries.add("p aromaticity");
+    }
+
+    for (int i = 0; i < structure.getAtomCount(); i++)
+    {
+      IAtom atom = structure.getAtom(i);
+      String entry = "a " + atom.getSymbol() + " " + getPosition(atom);
+
+      if (perceived && atom.getFlag(CDKConstants.ISAROMATIC))
+      {
+        entry += " aromatic";
+      }
+
+      entries.add(entry);
+      atomIndices.put(atom, Integer.valueOf(i));
+    }
+
+    for (int i = 0; i < structure.getBondCount(); i++)
+    {
+      IBond bond = structure.getBond(i);
+
+      // a terminal double bond is drawn on the side given by its direction
+      entries.add("b " + bond.getOrder() + " " + atomIndices.get(bond.getAtom(0)) + " " +
+        atomIndices.get(bond.getAtom(1)));
+    }
+
+    try
+    {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+      for (int i = 0; i < entries.size(); i++)
+      {
+        digest.update(entries.get(i).getBytes("UTF-8"));
+        digest.update((byte) '\n');
+      }
+
+      return toHex(digest.digest());
+    }
+
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new RuntimeException(e);
+    }
+
+    catch (UnsupportedEncodingException e)
+    {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private synchronized void put(Key key, byte[] image)
+  {
+    if (image.length > maximumBytes)
+    {
+      return;
+    }
+
+    byte[] previous = images.put(key, image);
+
+    if (previous != null)
+    {
+      bytes -= previous.length;
+    }
+
+    bytes += image.length;
+
+    Iterator<Map.Entry<Key, byte[]>> it = images.entrySet().iterator();
+
+    while (bytes > maximumBytes && it.hasNext())
+    {
+      Map.Entry<Key, byte[]> eldest = it.next();
+
+      bytes -= eldest.getValue().length;
+      evictions++;
+      it.remove();
+    }
+  }
+
+  /**
+   * Returns a description of the encoder that writes images in <code>format</code>:
+   * the class and settings of the <code>PNGEncoder</code> in use for PNG images, or
+   * <code>null</code> if images in <code>format</code> do not depend on it.
+   */
+  private static String getEncoder(String format)
+  {
+    if (!"png".equals(format))
+    {
+      return null;
+    }
+
+    PNGEncoder encoder = ImageKit.getPNGEncoder();
+
+    if (encoder == null)
+    {
+      return "ImageIO";
+    }
+
+    return encoder.getClass().getName() + " " + encoder.getCompressionLevel() + " " +
+      encoder.isPaletteEnabled() + " " + encoder.getQuantizationBits();
+  }
+
+  private static String getPosition(IAtom atom)
+  {
+    return atom.getPoint2d().x + "," + atom.getPoint2d().y;
+  }
+
+  private static String toHex(byte[] data)
+  {
+    char[] result = new char[2 * data.length];
+
+    for (int i = 0; i < data.length; i++)
+    {
+      result[2 * i] = HEX[(data[i] >> 4) & 0xf];
+      result[2 * i + 1] = HEX[data[i] & 0xf];
+    }
+
+    return new String(result);
+  }
+
+  /**
+   * A cache key. The settings, and the PNG encoder in use, are captured when the key is
+   * created, so later changes to the importer or to <code>ImageKit</code> do not affect it.
+   */
+  private static final class Key implements Painter.SettingsExporter
+  {
+    private String structureHash;
+    private String format;
+    private String encoder;
+    private int width;
+    private int height;
+    private double atomLabelHeight;
+    private double lineThickness;
+    private double lineSpacing;
+    private boolean antialiasing;
+    private ColorScheme colorScheme;
+
+    private Key(String structureHash, Painter.SettingsImporter settings, String format, int width, int height)
+    {
+      this.structureHash = structureHash;
+      this.format = format;
+      this.encoder = getEncoder(format);
+      this.width = width;
+      this.height = height;
+
+      if (settings == null)
+      {
+        new DefaultGraphicsPainter().exportSettings(this);
+      }
+
+      else
+      {
+        setAtomLabelHeight(settings.getAtomLabelHeight());
+        setLineThickness(settings.getLineThickness());
+        setLineSpacing(settings.getLineSpacing());
+        setAntialiasing(settings.getAntialiasing());
+        setColorScheme(settings.getColorScheme());
+      }
+    }
+
+    public void setAtomLabelHeight(double atomLabelHeight)
+    {
+      this.atomLabelHeight = atomLabelHeight;
+    }
+
+    public void setLineThickness(double lineThickness)
+    {
+      this.lineThickness = lineThickness;
+    }
+
+    public void setLineSpacing(double lineSpacing)
+    {
+      this.lineSpacing = lineSpacing;
+    }
+
+    public void setAntialiasing(boolean antialiasing)
+    {
+      this.antialiasing = antialiasing;
+    }
+
+    public void setColorScheme(ColorScheme scheme)
+    {
+      this.colorScheme = scheme;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object obj)
+    {
+      if (!(obj instanceof Key))
+      {
+        return false;
+      }
+
+      Key key = (Key) obj;
+
+      return structureHash.equals(key.structureHash) &&
+        format.equals(key.format) &&
+        (encoder == null ? key.encoder == null : encoder.equals(key.encoder)) &&
+        width == key.width &&
+        height == key.height &&
+        atomLabelHeight == key.atomLabelHeight &&
+        lineThickness == key.lineThickness &&
+        lineSpacing == key.lineSpacing &&
+        antialiasing == key.antialiasing &&
+        (colorScheme == null ? key.colorScheme == null : colorScheme.equals(key.colorScheme));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode()
+    {
+      int result = structureHash.hashCode();
+
+      result = 31 * result + format.hashCode();
+      result = 31 * result + (encoder == null ? 0 : encoder.hashCode());
+      result = 31 * result + width;
+      result = 31 * result + height;
+      result = 31 * result + hash(atomLabelHeight);
+      result = 31 * result + hash(lineThickness);
+      result = 31 * result + hash(lineSpacing);
+      result = 31 * result + (antialiasing ? 1 : 0);
+      result = 31 * result + (colorScheme == null ? 0 : colorScheme.hashCode());
+
+      return result;
+    }
+
+    private int hash(double value)
+    {
+      long bits = Double.doubleToLongBits(value);
+
+      return (int) (bits ^ (bits >>> 32));
+    }
+  }
+}
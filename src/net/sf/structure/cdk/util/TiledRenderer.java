@@ -0,0 +1,259 @@
+/* =====================================================
+ * StructureCDK : A 2D Molecular Visualization Framework
+ * =====================================================
+ *
+ * Project Info:  http://structure.sourceforge.net
+ *
+ * Copyright (C) 2004-2006 Richard L. Apodaca
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ *
+ * Created on Oct 18, 2026
+ */
+package net.sf.structure.cdk.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.sf.structure.cdk.paint.RenderPlan;
+
+/**
+ * <p>
+ * Renders a structure into a very large image tile by tile. Each tile paints only
+ * the bonds and atom labels whose bounding boxes reach into it, and tiles are
+ * painted on an <code>ExecutorService</code> if one is set. Antialiased edges are
+ * computed from the same geometry in every tile, so tiles join without seams.
+ * </p>
+ *
+ * <p>
+ * {@link #writePNG(RenderPlan, int, int, OutputStream)} never holds the whole image:
+ * it paints one row of tiles at a time into a strip as wide as the image and streams
+ * each finished strip to a <code>PNGEncoder</code>, so memory use is bounded by the
+ * image width times the tile height.
+ * </p>
+ *
+ * <p>
+ * The executor belongs to the caller, who chooses its kind and size and shuts it down.
+ * </p>
+ */
+public class TiledRenderer
+{
+  private int tileWidth;
+  private int tileHeight;
+  private ExecutorService executor;
+
+  /**
+   * Constructs a <code>TiledRenderer</code> painting tiles of <code>tileWidth</code>
+   * by <code>tileHeight</code> pixels. Tiles are painted on the calling thread until
+   * an executor is set.
+   *
+   * @param tileWidth the width, in pixels, of each tile
+   * @param tileHeight the height, in pixels, of each tile
+   */
+  public TiledRenderer(int tileWidth, int tileHeight)
+  {
+    if (tileWidth < 1 || tileHeight < 1)
+    {
+      throw new IllegalArgumentException("Tile dimensions must be positive: " + tileWidth + "x" + tileHeight);
+    }
+
+    this.tileWidth = tileWidth;
+    this.tileHeight = tileHeight;
+    this.executor = null;
+  }
+
+  /**
+   * Sets the executor on which tiles are painted.
+   *
+   * @param executor the executor, or <code>null</code> to paint on the calling thread
+   */
+  public void setExecutor(ExecutorService executor)
+  {
+    this.executor = executor;
+  }
+
+  /**
+   * Creates an image of <code>plan</code> of the specified dimensions on a white
+   * background.
+   *
+   * @param plan the RenderPlan to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @return a new image of <code>plan</code>
+   * @throws InterruptedException if interrupted while waiting for the executor
+   */
+  public BufferedImage createImage(RenderPlan plan, int width, int height) throws InterruptedException
+  {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+    paintStrip(plan, new Rectangle(width, height), image, 0);
+
+    return image;
+  }
+
+  /**
+   * Writes <code>plan</code> as a 24-bit RGB PNG image of the specified dimensions to
+   * <code>out</code>, with a white background, streaming the image one row of tiles at
+   * a time. The <code>PNGEncoder</code> set on <code>ImageKit</code> is used if there
+   * is one; its palette setting does not apply. The stream is flushed but not closed.
+   *
+   * @param plan the RenderPlan to be rendered
+   * @param width the width, in pixels, of the image
+   * @param height the height, in pixels, of the image
+   * @param out the stream to write to
+   * @throws IOException if the image cannot be written
+   * @throws InterruptedException if interrupted while waiting for the executor
+   */
+  public void writePNG(RenderPlan plan, int width, int height, OutputStream out) throws IOException, InterruptedException
+  {
+    PNGEncoder encoder = ImageKit.getPNGEncoder();
+
+    if (encoder == null)
+    {
+      encoder = new PNGEncoder(6, false);
+    }
+
+    PNGEncoder.RowWriter writer = encoder.createRowWriter(width, height, out);
+    Rectangle bounds = new Rectangle(width, height);
+    BufferedImage strip = new BufferedImage(width, Math.min(tileHeight, height), BufferedImage.TYPE_INT_RGB);
+
+    for (int y = 0; y < height; y += tileHeight)
+    {
+      BufferedImage rows = strip;
+
+      if (y + strip.getHeight() > height)
+      {
+        rows = strip.getSubimage(0, 0, width, height - y);
+      }
+
+      paintStrip(plan, bounds, rows, y);
+      writer.write(rows);
+    }
+
+    writer.finish();
+  }
+
+  /**
+   * Clears <code>strip</code> to white and paints into it the rows of the image of
+   * <code>plan</code> fitted to <code>bounds</code> that begin at <code>y</code>, one
+   * tile at a time.
+   */
+  private void paintStrip(RenderPlan plan, Rectangle bounds, BufferedImage strip, int y) throws InterruptedException
+  {
+    Graphics2D g = strip.createGraphics();
+
+    try
+    {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, strip.getWidth(), strip.getHeight());
+    }
+
+    finally
+    {
+      g.dispose();
+    }
+
+    List<Future<?>> tiles = new ArrayList<Future<?>>();
+
+    for (int top = 0; top < strip.getHeight(); top += tileHeight)
+    {
+      for (int left = 0; left < strip.getWidth(); left += tileWidth)
+      {
+        int width = Math.min(tileWidth, strip.getWidth() - left);
+        int height = Math.min(tileHeight, strip.getHeight() - top);
+        Tile tile = new Tile(plan, bounds, new Rectangle(left, y + top, width, height),
+          strip.getSubimage(left, top, width, height));
+
+        if (executor == null)
+        {
+          tile.run();
+        }
+
+        else
+        {
+          tiles.add(executor.submit(tile));
+        }
+      }
+    }
+
+    try
+    {
+      for (int i = 0; i < tiles.size(); i++)
+      {
+        tiles.get(i).get();
+      }
+    }
+
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof Error)
+      {
+        throw (Error) e.getCause();
+      }
+
+      throw (RuntimeException) e.getCause();
+    }
+
+    finally
+    {
+      for (int i = 0; i < tiles.size(); i++)
+      {
+        tiles.get(i).cancel(true);
+      }
+    }
+  }
+
+  private static final class Tile implements Runnable
+  {
+    private RenderPlan plan;
+    private Rectangle bounds;
+    private Rectangle region;
+    private BufferedImage image;
+
+    private Tile(RenderPlan plan, Rectangle bounds, Rectangle region, BufferedImage image)
+    {
+      this.plan = plan;
+      this.bounds = bounds;
+      this.region = region;
+      this.image = image;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run()
+    {
+      Graphics2D g = image.createGraphics();
+
+      try
+      {
+        g.translate(-region.x, -region.y);
+        plan.paint(g, bounds, region);
+      }
+
+      finally
+      {
+        g.dispose();
+      }
+    }
+  }
+}